@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the plants and animals of a simulation in one bucket per
+ * species, and lets only the buckets whose species can act at the
+ * current time and weather act in a step. Participants of the other
+ * species are not visited at all.
+ *
+ * Every participant is given an increasing order number when it is
+ * added, and the active buckets are merged by that number, so that
+ * participants act in the same order as they would in a single list:
+ * the oldest first, with newborns at the end.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class ActivityScheduler
+{
+    /**
+     * The participants of one species, in the order they were added.
+     */
+    private static class Bucket<T>
+    {
+        // The participants.
+        private List<T> members;
+        // The order number of each participant.
+        private long[] order;
+
+        /**
+         * Create an empty bucket.
+         */
+        public Bucket()
+        {
+            members = new ArrayList<>();
+            order = new long[16];
+        }
+
+        /**
+         * Add a participant after all others.
+         * @param member The participant.
+         * @param number Its order number, greater than any in the bucket.
+         */
+        public void add(T member, long number)
+        {
+            if(members.size() == order.length) {
+                order = Arrays.copyOf(order, order.length * 2);
+            }
+            order[members.size()] = number;
+            members.add(member);
+        }
+
+        /**
+         * Remove every dead participant in a single pass, keeping
+         * the order of the survivors.
+         * @param alive Tells whether a participant is alive.
+         */
+        public void removeDead(Predicate<T> alive)
+        {
+            int next = 0;
+            for(int i = 0; i < members.size(); i++) {
+                T member = members.get(i);
+                if(alive.test(member)) {
+                    members.set(next, member);
+                    order[next] = order[i];
+                    next++;
+                }
+            }
+            members.subList(next, members.size()).clear();
+        }
+    }
+
+    // The plants.
+    private Bucket<Plant> plants;
+    // The animals, indexed by species code.
+    private List<Bucket<Animal>> animals;
+    // The order number given to the next participant added.
+    private long nextOrder;
+    // The number of participants visited in the last step.
+    private int visited;
+
+    /**
+     * Create an empty scheduler.
+     */
+    public ActivityScheduler()
+    {
+        plants = new Bucket<>();
+        animals = new ArrayList<>();
+        for(int species = 0; species < Species.COUNT; species++) {
+            animals.add(new Bucket<>());
+        }
+        nextOrder = 0;
+        visited = 0;
+    }
+
+    /**
+     * Add a plant, to act after all participants already added.
+     * @param plant The plant.
+     */
+    public void add(Plant plant)
+    {
+        plants.add(plant, nextOrder++);
+    }
+
+    /**
+     * Add an animal, to act after all participants already added.
+     * @param animal The animal.
+     */
+    public void add(Animal animal)
+    {
+        animals.get(Species.of(animal)).add(animal, nextOrder++);
+    }
+
+    /**
+     * Remove every participant.
+     */
+    public void clear()
+    {
+        plants.members.clear();
+        for(Bucket<Animal> bucket : animals) {
+            bucket.members.clear();
+        }
+        nextOrder = 0;
+    }
+
+    /**
+     * @return The number of participants, including dead ones
+     *         not yet removed.
+     */
+    public int size()
+    {
+        int size = plants.members.size();
+        for(Bucket<Animal> bucket : animals) {
+            size += bucket.members.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of participants visited in the last step.
+     */
+    public int getVisited()
+    {
+        return visited;
+    }
+
+    /**
+     * Run one step: the plants act if plants can act, then the
+     * animals of every species that can act, merged in the order
+     * they were added. The dead of every bucket that acted are
+     * removed, and the newborns are added at the end.
+     * @param time The time of the day of the step.
+     * @param weather The weather of the step.
+     */
+    public void step(Time time, Weather weather)
+    {
+        visited = 0;
+        // Provide space for newborn plants.
+        List<Plant> newPlants = new ArrayList<>();
+        // Provide space for newborn animals.
+        List<Animal> newAnimals = new ArrayList<>();
+
+        if(Plant.canAct(time)) {
+            for(Plant plant : plants.members) {
+                plant.act(newPlants, time);
+            }
+            visited += plants.members.size();
+            plants.removeDead(Plant::isAlive);
+        }
+
+        List<Bucket<Animal>> active = activeBuckets(time, weather);
+        inOrder(active, animal -> animal.act(newAnimals, time, weather));
+        for(Bucket<Animal> bucket : active) {
+            visited += bucket.members.size();
+            bucket.removeDead(Animal::isAlive);
+        }
+
+        // Add the newly born animals and plants at the end.
+        for(Animal animal : newAnimals) {
+            add(animal);
+        }
+        for(Plant plant : newPlants) {
+            add(plant);
+        }
+    }
+
+    /**
+     * Remove the dead of every bucket, whether it acted or not.
+     */
+    public void removeDead()
+    {
+        plants.removeDead(Plant::isAlive);
+        for(Bucket<Animal> bucket : animals) {
+            bucket.removeDead(Animal::isAlive);
+        }
+    }
+
+    /**
+     * @return The plants, including dead ones not yet removed.
+     */
+    public List<Plant> getPlants()
+    {
+        return plants.members;
+    }
+
+    /**
+     * Hand every animal of the species that can act at the given
+     * time and weather to an action, oldest first.
+     * @param time The time of the day.
+     * @param weather The weather.
+     * @param action What to do with each animal.
+     */
+    public void forEachActiveAnimal(Time time, Weather weather, Consumer<Animal> action)
+    {
+        inOrder(activeBuckets(time, weather), action);
+    }
+
+    /**
+     * Hand every animal to an action, oldest first.
+     * @param action What to do with each animal.
+     */
+    public void forEachAnimal(Consumer<Animal> action)
+    {
+        inOrder(animals, action);
+    }
+
+    /**
+     * @return The buckets of the animal species that can act.
+     */
+    private List<Bucket<Animal>> activeBuckets(Time time, Weather weather)
+    {
+        List<Bucket<Animal>> active = new ArrayList<>();
+        for(int species = 0; species < Species.COUNT; species++) {
+            if(Species.isAnimal(species) && Species.canAct(species, time, weather)) {
+                active.add(animals.get(species));
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Hand the animals of the given buckets to an action, oldest first.
+     * @param active The buckets of the species that can act.
+     * @param action What to do with each animal.
+     */
+    private void inOrder(List<Bucket<Animal>> active, Consumer<Animal> action)
+    {
+        int[] heads = new int[active.size()];
+        boolean acting = true;
+        while(acting) {
+            // Find the bucket whose next animal was added first.
+            int first = -1;
+            for(int b = 0; b < heads.length; b++) {
+                Bucket<Animal> bucket = active.get(b);
+                if(heads[b] < bucket.members.size() &&
+                   (first < 0 || bucket.order[heads[b]] < active.get(first).order[heads[first]])) {
+                    first = b;
+                }
+            }
+            if(first >= 0) {
+                action.accept(active.get(first).members.get(heads[first]));
+                heads[first]++;
+            }
+            else {
+                acting = false;
+            }
+        }
+    }
+}
@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 /**
@@ -17,11 +16,8 @@ public abstract class Animal
     private Location location;
     // Whether the animal is infected or not.
     protected boolean infected;
-    
-    // A shared random number generator to control breeding.
-    protected static final Random rand = Randomizer.getRandom();
     //Creates a posibility of being infected.
-    private Disease disease = new Disease();
+    private Disease disease;
     
     
     /**
@@ -34,6 +30,7 @@ public abstract class Animal
     {
         alive = true;
         this.field = field;
+        disease = new Disease(field.getRandom());
         setLocation(location);
     }
     
@@ -63,6 +60,11 @@ public abstract class Animal
     {
         alive = false;
         if(location != null) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.died(cellOf(location));
+            }
+            field.removeState(cellOf(location), state());
             field.clear(location);
             location = null;
             field = null;
@@ -85,12 +87,88 @@ public abstract class Animal
     protected void setLocation(Location newLocation)
     {
         if(location != null) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.moved(cellOf(location), cellOf(newLocation));
+            }
+            field.removeState(cellOf(location), state());
+            field.addState(cellOf(newLocation), state());
             field.clear(location);
         }
         location = newLocation;
         field.place(this, newLocation);
     }
     
+    /**
+     * Record the birth of the animal in the hash of its field, and in
+     * its journal if it has one. Called once the animal is fully made,
+     * so that its gender is known.
+     */
+    protected void recordBirth()
+    {
+        Journal journal = field.getJournal();
+        if(journal != null) {
+            journal.born(cellOf(location), Species.of(this), isMale());
+        }
+        field.addState(cellOf(location), state());
+    }
+    
+    /**
+     * @return The state bits of the animal, as given by StateHash.state.
+     */
+    private int state()
+    {
+        return StateHash.state(isMale(), infected);
+    }
+    
+    /**
+     * Return the index of a cell of the animal's field.
+     * @param cell The location of the cell.
+     * @return The index of the cell, as given by Field.getIndex.
+     */
+    private int cellOf(Location cell)
+    {
+        return field.getIndex(cell.getRow(), cell.getCol());
+    }
+    
+    /**
+     * @return The animal's age.
+     */
+    abstract int getAge();
+    
+    /**
+     * @return The animal's food level.
+     */
+    abstract int getFoodLevel();
+    
+    /**
+     * Only deer and mice have a gender; other animals are never male.
+     * @return true if the animal is male.
+     */
+    boolean isMale()
+    {
+        return false;
+    }
+    
+    /**
+     * Set the characteristics of the animal, as when it is restored
+     * from a checkpoint.
+     * @param age The animal's age.
+     * @param foodLevel The animal's food level.
+     * @param male Whether the animal is male, for those with a gender.
+     */
+    abstract void restore(int age, int foodLevel, boolean male);
+    
+    /**
+     * Return the random number generator of the animal's simulation.
+     * It controls breeding and the animal's random characteristics.
+     * @return The random number generator of the animal's field.
+     */
+    protected Random getRandom()
+    {
+        return field.getRandom();
+    }
+    
     /**
      * Return the animal's field.
      * @return The animal's field.
@@ -105,6 +183,13 @@ public abstract class Animal
      */
     public void setInfected()
     {
+        if(!infected && location != null) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.infected(cellOf(location));
+            }
+            field.addState(cellOf(location), StateHash.INFECTED);
+        }
         infected = true;
     }
     
@@ -117,22 +202,36 @@ public abstract class Animal
         return infected;
     }
     
-   /**
+    /**
+     * Take the snapshot of the neighbourhood that the behaviour
+     * steps of one act work from.
+     * @return The snapshot of the cells adjacent to the animal.
+     */
+    protected Surroundings lookAround()
+    {
+        return field.surroundings(location);
+    }
+    
+    /**
      * Look for animal adjacent to the current location.
-     * Only the first live animal is infected.
+     * Every adjacent animal is infected.
      */
     public void infect()
     {
-        List<Location> adjacent = getField().adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Animal) {
-                Animal newInfected = (Animal) animal;
+        infect(lookAround());
+    }
+    
+    /**
+     * Infect every animal in the given neighbourhood.
+     * @param around The snapshot of the animal's neighbourhood.
+     */
+    protected void infect(Surroundings around)
+    {
+        for(int i = 0; i < around.size(); i++) {
+            if(Species.isAnimal(around.getSpecies(i))) {
+                Animal newInfected = (Animal) around.getOccupant(i);
                 newInfected.setInfected();
-                }
             }
-        
+        }
     }
 }
@@ -0,0 +1,844 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measurements comparing the ways a simulation can be represented
+ * and run. Each measurement prints its results and can be run from
+ * BlueJ, or from the command line by naming it:
+ *
+ *     java Benchmark memory
+ *     java Benchmark removal
+ *     java Benchmark activity
+ *     java Benchmark engines
+ *     java Benchmark tiles
+ *     java Benchmark random
+ *     java Benchmark startup
+ *     java Benchmark checkpoint
+ *     java Benchmark background
+ *     java Benchmark journal
+ *     java Benchmark render
+ *     java Benchmark dirty
+ *     java Benchmark lod
+ *     java Benchmark viewport
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Benchmark
+{
+    // The size of the field used when none is given.
+    private static final int DEFAULT_DEPTH = 1000;
+    private static final int DEFAULT_WIDTH = 1000;
+    // The number of steps run when measuring a running simulation.
+    private static final int STEPS = 500;
+    // The number of steps run for each point of a scaling curve.
+    private static final int TILE_STEPS = 50;
+    // The tile sizes of the scaling curves.
+    private static final int[] TILE_SIZES = { 8, 32, 128 };
+    // The number of plants used when measuring the removal of the dead.
+    private static final int REMOVAL_SIZE = 100000;
+    // The number of random numbers drawn when measuring the generators.
+    private static final int RANDOM_COUNT = 10000000;
+    // The widths and depths of the fields whose startup is measured.
+    private static final int[] STARTUP_SIZES = { 250, 500, 1000, 2000 };
+    // The width and depth of the field that is checkpointed.
+    private static final int CHECKPOINT_SIZE = 3000;
+    // The number of steps between checkpoints of a running simulation.
+    private static final int CHECKPOINT_INTERVAL = 5;
+    // The widths and depths of the fields whose rendering is measured.
+    private static final int[] RENDER_SIZES = { 180, 500, 1000 };
+    // The widest a rendered field is drawn, in pixels.
+    private static final int RENDER_PIXELS = 1200;
+    // The number of frames rendered for each size.
+    private static final int FRAMES = 20;
+    // The numbers of cells changed between frames when measuring
+    // the redrawing of changed cells only.
+    private static final int[] CHANGES = { 0, 100, 10000, 100000, 1000000 };
+    // The widths and depths of the fields drawn at a lower level of detail.
+    private static final int[] LOD_SIZES = { 1000, 2000, 4000 };
+    // The width and height of the image they are drawn into, in pixels.
+    private static final int LOD_PIXELS = 800;
+    // The number of cells changed between their frames.
+    private static final int LOD_CHANGES = 10000;
+    // The widths and depths of the fields drawn through a viewport.
+    private static final int[] VIEWPORT_SIZES = { 1000, 2000, 4000 };
+    // The number of pixels across a cell in the viewport.
+    private static final int VIEWPORT_SCALE = 2;
+
+    /**
+     * Draws a whole field as an image with one pixel per cell, looking
+     * the colour of each up in a palette indexed by species code, as
+     * SimulatorView did before it drew through a TileCache. Between
+     * frames it can draw only the chunks of cells a frame notes as
+     * changed.
+     */
+    private static class FieldRenderer
+    {
+        // The image, and the pixels behind it, indexed as by Field.getIndex.
+        private BufferedImage image;
+        private int[] pixels;
+        // The colour of each species, indexed by species code, as RGB.
+        private int[] palette;
+
+        /**
+         * Create a renderer for a field of the given size.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         * @param unknown The colour of species given no colour.
+         */
+        FieldRenderer(int depth, int width, Color unknown)
+        {
+            image = new BufferedImage(width, depth, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            palette = new int[Species.COUNT];
+            for(int code = 0; code < Species.COUNT; code++) {
+                palette[code] = unknown.getRGB();
+            }
+        }
+
+        /**
+         * Define the colour of a species.
+         * @param species The species code, Species.EMPTY for free cells.
+         * @param color The colour.
+         */
+        void setColor(byte species, Color color)
+        {
+            palette[species] = color.getRGB();
+        }
+
+        /**
+         * Draw every cell of a frame into the image.
+         * @param frame The frame, of a field of the size given to the renderer.
+         */
+        void render(FieldFrame frame)
+        {
+            for(int index = 0; index < pixels.length; index++) {
+                pixels[index] = palette[frame.getSpeciesAt(index)];
+            }
+        }
+
+        /**
+         * Draw the cells of a frame that changed since the frame drawn
+         * before into the image.
+         * @param frame The frame, of a field of the size given to the renderer.
+         */
+        void update(FieldFrame frame)
+        {
+            int count = frame.getChunkCount();
+            // Past half the chunks, drawing them one by one costs more
+            // than drawing every cell in one pass.
+            if(count > (pixels.length / Field.CHUNK_SIZE) / 2) {
+                render(frame);
+                return;
+            }
+            for(int i = 0; i < count; i++) {
+                int first = frame.getChunk(i) * Field.CHUNK_SIZE;
+                int end = Math.min(first + Field.CHUNK_SIZE, pixels.length);
+                for(int index = first; index < end; index++) {
+                    pixels[index] = palette[frame.getSpeciesAt(index)];
+                }
+            }
+        }
+
+        /**
+         * Copy the image to a graphics context, scaled to the given size.
+         * @param g The graphics context.
+         * @param drawWidth The width to draw the image at.
+         * @param drawHeight The height to draw the image at.
+         */
+        void draw(Graphics g, int drawWidth, int drawHeight)
+        {
+            g.drawImage(image, 0, 0, drawWidth, drawHeight, null);
+        }
+    }
+
+    /**
+     * Run the measurement named by the first argument.
+     * @param args The name of the measurement.
+     */
+    public static void main(String[] args)
+    {
+        String name = args.length > 0 ? args[0] : "memory";
+        if(name.equals("memory")) {
+            memoryPerEntity(DEFAULT_DEPTH, DEFAULT_WIDTH);
+        }
+        else if(name.equals("removal")) {
+            deadRemoval(REMOVAL_SIZE);
+        }
+        else if(name.equals("activity")) {
+            activity(DEFAULT_DEPTH, DEFAULT_WIDTH, STEPS);
+        }
+        else if(name.equals("engines")) {
+            engines(DEFAULT_DEPTH, DEFAULT_WIDTH, STEPS);
+        }
+        else if(name.equals("tiles")) {
+            tileScaling(DEFAULT_DEPTH, DEFAULT_WIDTH, TILE_STEPS);
+        }
+        else if(name.equals("random")) {
+            randomNumbers(RANDOM_COUNT);
+        }
+        else if(name.equals("startup")) {
+            startup(STARTUP_SIZES);
+        }
+        else if(name.equals("checkpoint")) {
+            checkpoint(CHECKPOINT_SIZE, CHECKPOINT_SIZE);
+        }
+        else if(name.equals("background")) {
+            backgroundCheckpoints(DEFAULT_DEPTH, DEFAULT_WIDTH, TILE_STEPS, CHECKPOINT_INTERVAL);
+        }
+        else if(name.equals("journal")) {
+            journal(DEFAULT_DEPTH, DEFAULT_WIDTH, TILE_STEPS);
+        }
+        else if(name.equals("render")) {
+            render(RENDER_SIZES, FRAMES);
+        }
+        else if(name.equals("dirty")) {
+            dirtyRendering(DEFAULT_DEPTH, DEFAULT_WIDTH, CHANGES, FRAMES);
+        }
+        else if(name.equals("lod")) {
+            levelOfDetail(LOD_SIZES, LOD_PIXELS, LOD_CHANGES, FRAMES);
+        }
+        else if(name.equals("viewport")) {
+            viewport(VIEWPORT_SIZES, LOD_PIXELS, VIEWPORT_SCALE, LOD_CHANGES, FRAMES);
+        }
+        else {
+            System.out.println("Unknown measurement: " + name);
+        }
+    }
+
+    /**
+     * Report the heap used per plant or animal by each engine. The
+     * heap taken by an empty field of the same size, holding only
+     * species codes, is subtracted, so that only the participants and
+     * their lists or arrays count, with the handles and table of
+     * occupants the field keeps for the engines using objects.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     */
+    public static void memoryPerEntity(int depth, int width)
+    {
+        long empty = usedHeap();
+        Field field = new Field(depth, width, true, Randomizer.getRandom(0));
+        field.setObjectsKept(false);
+        long fieldBytes = usedHeap() - empty;
+        field = null;
+
+        for(Simulator.Engine engine : Simulator.Engine.values()) {
+            long before = usedHeap();
+            Simulator simulator = new Simulator(depth, width, true, 0);
+            simulator.setEngine(engine);
+            long bytes = usedHeap() - before - fieldBytes;
+            int participants = simulator.getParticipantCount();
+            System.out.println(engine + ": " + participants + " participants, " +
+                               (bytes / Math.max(participants, 1)) + " bytes each");
+            simulator = null;
+        }
+    }
+
+    /**
+     * Report how long it takes to remove the dead from a list of
+     * plants, for a growing number of deaths, both by removing them
+     * one at a time through an iterator, as the simulator used to,
+     * and by compacting the buckets in one pass, as it does now.
+     * @param size The number of plants in the list.
+     */
+    public static void deadRemoval(int size)
+    {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        Field field = new Field(side, side, true, Randomizer.getRandom(0));
+        System.out.println("deaths, iterator ms, compaction ms");
+        for(int percent = 0; percent <= 100; percent += 10) {
+            int deaths = size * percent / 100;
+
+            List<Plant> plants = createPlants(field, size, deaths);
+            long start = System.nanoTime();
+            for(Iterator<Plant> it = plants.iterator(); it.hasNext(); ) {
+                if(! it.next().isAlive()) {
+                    it.remove();
+                }
+            }
+            long iterator = System.nanoTime() - start;
+
+            ActivityScheduler scheduler = new ActivityScheduler();
+            for(Plant plant : createPlants(field, size, deaths)) {
+                scheduler.add(plant);
+            }
+            start = System.nanoTime();
+            scheduler.removeDead();
+            long compaction = System.nanoTime() - start;
+
+            System.out.println(deaths + ", " + iterator / 1e6 + ", " + compaction / 1e6);
+        }
+    }
+
+    /**
+     * Report how many participants are visited per step, out of
+     * all those in the field, now that only the species that can
+     * act are visited, together with the time per step.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps to run.
+     */
+    public static void activity(int depth, int width, int steps)
+    {
+        Simulator simulator = new Simulator(depth, width, true, 0);
+        ActivityScheduler scheduler = simulator.getScheduler();
+        long visited = 0;
+        long participants = 0;
+        long start = System.nanoTime();
+        for(int step = 0; step < steps && simulator.isViable(); step++) {
+            participants += scheduler.size();
+            simulator.simulateOneStep();
+            visited += scheduler.getVisited();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("visited per step: " + visited / steps + " of " + participants / steps +
+                           " (" + (100 * visited / Math.max(participants, 1)) + "%), " +
+                           elapsed / 1e6 / steps + " ms per step");
+    }
+
+    /**
+     * Report the time per step of every engine over the same number
+     * of steps, starting from the same seed.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps to run.
+     */
+    public static void engines(int depth, int width, int steps)
+    {
+        for(Simulator.Engine engine : Simulator.Engine.values()) {
+            Simulator simulator = new Simulator(depth, width, true, 0);
+            simulator.setEngine(engine);
+            long start = System.nanoTime();
+            simulator.simulate(steps);
+            long elapsed = System.nanoTime() - start;
+            System.out.println(engine + ": " + simulator.getStep() + " steps, " +
+                               elapsed / 1e6 / Math.max(simulator.getStep(), 1) + " ms per step, " +
+                               simulator.getParticipantCount() + " participants at the end");
+        }
+    }
+
+    /**
+     * Report the throughput of the TILES engine for every tile size,
+     * with 1, 2, 4 and so on tiles at a time, ending with the number
+     * of processors. Each point starts from the same seed.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps run for each point.
+     */
+    public static void tileScaling(int depth, int width, int steps)
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("tile size, parallelism, steps per second");
+        for(int tileSize : TILE_SIZES) {
+            int parallelism = 0;
+            while(parallelism < processors) {
+                parallelism = Math.min(Math.max(parallelism * 2, 1), processors);
+                Simulator simulator = new Simulator(depth, width, true, 0);
+                simulator.setTiling(tileSize, parallelism);
+                simulator.setEngine(Simulator.Engine.TILES);
+                long start = System.nanoTime();
+                simulator.simulate(steps);
+                long elapsed = System.nanoTime() - start;
+                System.out.println(tileSize + ", " + parallelism + ", " +
+                                   simulator.getStep() * 1e9 / elapsed);
+            }
+        }
+    }
+
+    /**
+     * Report how long it takes to draw random numbers between 0 and 1
+     * from a shared Random, one after the other, and to work them out
+     * from a CounterRandom, one at a time and in bulk into a buffer.
+     * @param count The number of random numbers.
+     */
+    public static void randomNumbers(int count)
+    {
+        Random rand = Randomizer.getRandom(0);
+        CounterRandom counter = new CounterRandom(0);
+        double[] buffer = new double[1024];
+        double sum = 0;
+
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            sum += rand.nextDouble();
+        }
+        long shared = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            sum += counter.nextDouble(0, i, CounterRandom.BREEDING);
+        }
+        long single = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(int first = 0; first < count; first += buffer.length) {
+            int length = Math.min(buffer.length, count - first);
+            counter.fill(0, first, CounterRandom.BREEDING, buffer, 0, length);
+            for(int i = 0; i < length; i++) {
+                sum += buffer[i];
+            }
+        }
+        long bulk = System.nanoTime() - start;
+
+        System.out.println("shared Random: " + shared / (double) count + " ns per number");
+        System.out.println("CounterRandom, one at a time: " + single / (double) count + " ns per number");
+        System.out.println("CounterRandom, in bulk: " + bulk / (double) count + " ns per number");
+        // Printed so that the drawing is not optimised away.
+        System.out.println("(mean " + sum / (3.0 * count) + ")");
+    }
+
+    /**
+     * Report how long it takes to populate square fields of the given
+     * sizes: choosing the species of the cells with one thread and with
+     * every processor, and resetting a simulation with each engine that
+     * populates in its own way.
+     * @param sizes The widths and depths of the fields.
+     */
+    public static void startup(int[] sizes)
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("size, choose (1 thread) ms, choose (" + processors + " threads) ms, " +
+                           "reset OBJECTS ms, reset ENTITY_STORE ms");
+        for(int size : sizes) {
+            byte[] order = { Species.FOX, Species.RABBIT, Species.PLANT };
+            double[] probabilities = { 0.02, 0.08, 0.02 };
+            CounterRandom random = new CounterRandom(0);
+            long start = System.nanoTime();
+            new Populator(order, probabilities, 1).choose(size, size, random);
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            new Populator(order, probabilities, processors).choose(size, size, random);
+            long parallel = System.nanoTime() - start;
+
+            Simulator simulator = new Simulator(size, size, true, 0);
+            start = System.nanoTime();
+            simulator.reset();
+            long objects = System.nanoTime() - start;
+            simulator.setEngine(Simulator.Engine.ENTITY_STORE);
+            start = System.nanoTime();
+            simulator.reset();
+            long store = System.nanoTime() - start;
+            simulator = null;
+
+            System.out.println(size + ", " + single / 1e6 + ", " + parallel / 1e6 + ", " +
+                               objects / 1e6 + ", " + store / 1e6);
+        }
+    }
+
+    /**
+     * Report how long it takes, and how many bytes are allocated, to
+     * save a checkpoint of a simulation using the entity store and to
+     * restore it into another simulation.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     */
+    public static void checkpoint(int depth, int width)
+    {
+        Simulator simulator = new Simulator(depth, width, true, 0);
+        simulator.setEngine(Simulator.Engine.ENTITY_STORE);
+        simulator.simulate(10);
+        int participants = simulator.getParticipantCount();
+        try {
+            Path path = Files.createTempFile("checkpoint", ".bin");
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            simulator.saveCheckpoint(path);
+            long saving = System.nanoTime() - start;
+            long savingBytes = allocatedBytes() - allocated;
+
+            // Restore into the same simulation, whose store is already large enough.
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            simulator.restoreCheckpoint(path);
+            long restoring = System.nanoTime() - start;
+            long restoringBytes = allocatedBytes() - allocated;
+
+            System.out.println(participants + " participants, " + Files.size(path) + " bytes");
+            System.out.println("save: " + saving / 1e6 + " ms, " + savingBytes + " bytes allocated");
+            System.out.println("restore: " + restoring / 1e6 + " ms, " + restoringBytes + " bytes allocated");
+            System.out.println("10M participants would take about " +
+                               (saving + restoring) / 1e9 * 1e7 / participants + " s to save and restore");
+            Files.delete(path);
+        }
+        catch(IOException e) {
+            System.out.println("Checkpoint failed: " + e);
+        }
+    }
+
+    /**
+     * Report how long a simulation using the entity store takes to run
+     * with no checkpoints, with checkpoints written as it steps, and
+     * with checkpoints written in the background by a CheckpointWriter,
+     * with how long stepping was held up by the writer.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps to run.
+     * @param interval The number of steps between checkpoints.
+     */
+    public static void backgroundCheckpoints(int depth, int width, int steps, int interval)
+    {
+        try {
+            Path path = Files.createTempFile("checkpoint", ".bin");
+            for(int run = 0; run < 3; run++) {
+                Simulator simulator = new Simulator(depth, width, true, 0);
+                simulator.setEngine(Simulator.Engine.ENTITY_STORE);
+                CheckpointWriter writer = null;
+                if(run == 2) {
+                    writer = new CheckpointWriter();
+                    simulator.setCheckpointing(writer, path, interval);
+                }
+                long start = System.nanoTime();
+                for(int step = 1; step <= steps; step++) {
+                    simulator.simulateOneStep();
+                    if(run == 1 && step % interval == 0) {
+                        simulator.saveCheckpoint(path);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                String label = run == 0 ? "none" : run == 1 ? "synchronous" : "background";
+                System.out.print(label + ": " + elapsed / 1e6 / steps + " ms per step");
+                if(writer != null) {
+                    writer.close();
+                    System.out.print(", " + writer.getCheckpointsWritten() + " written, blocked " +
+                                     writer.getBlockedNanos() / 1e6 + " ms, copying " +
+                                     writer.getCopyNanos() / 1e6 + " ms, longest write " +
+                                     writer.getLongestWriteNanos() / 1e6 + " ms");
+                }
+                System.out.println();
+            }
+            Files.delete(path);
+        }
+        catch(IOException e) {
+            System.out.println("Checkpoint failed: " + e);
+        }
+    }
+
+    /**
+     * Report the time per step of the OBJECTS and ENTITY_STORE engines
+     * with and without a journal of the changes, the size of the
+     * journal, and how long it takes to replay it from a checkpoint
+     * taken when it started. Each engine runs without, with, and
+     * again without a journal, to show how much the times vary anyway.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps to run.
+     */
+    public static void journal(int depth, int width, int steps)
+    {
+        try {
+            Path checkpoint = Files.createTempFile("checkpoint", ".bin");
+            Path path = Files.createTempFile("journal", ".bin");
+            Simulator.Engine[] engines = { Simulator.Engine.OBJECTS, Simulator.Engine.ENTITY_STORE };
+            for(Simulator.Engine engine : engines) {
+                for(int run = 0; run < 3; run++) {
+                    Simulator simulator = new Simulator(depth, width, true, 0);
+                    simulator.setEngine(engine);
+                    boolean journalled = run == 1;
+                    if(journalled) {
+                        simulator.saveCheckpoint(checkpoint);
+                        simulator.startJournal(path);
+                    }
+                    long start = System.nanoTime();
+                    for(int step = 1; step <= steps; step++) {
+                        simulator.simulateOneStep();
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    simulator.stopJournal();
+                    System.out.print(engine + (journalled ? ", journal: " : ", none: ") +
+                                     elapsed / 1e6 / steps + " ms per step");
+                    if(journalled) {
+                        start = System.nanoTime();
+                        JournalReplay replay = new JournalReplay(checkpoint, path);
+                        replay.advanceTo(steps);
+                        long replayed = System.nanoTime() - start;
+                        System.out.print(", " + Files.size(path) / steps + " bytes per step, replayed in " +
+                                         replayed / 1e6 + " ms");
+                    }
+                    System.out.println();
+                }
+            }
+            Files.delete(checkpoint);
+            Files.delete(path);
+        }
+        catch(IOException e) {
+            System.out.println("Journal failed: " + e);
+        }
+    }
+
+    /**
+     * Report the time to draw a frame of a square field, at six pixels
+     * per cell or as many as fit in RENDER_PIXELS, both a cell at a
+     * time with setColor and fillRect, as SimulatorView first did, and
+     * with a FieldRenderer writing pixels and scaling them in one
+     * drawImage call. Runs headless.
+     * @param sizes The widths and depths of the fields.
+     * @param frames The number of frames drawn for each.
+     */
+    public static void render(int[] sizes, int frames)
+    {
+        System.out.println("size, per cell ms, raster ms");
+        Color[] colors = { Color.WHITE, Color.GREEN, Color.ORANGE, Color.BLUE,
+                           Color.GRAY, Color.RED, Color.PINK, Color.GRAY };
+        for(int size : sizes) {
+            Simulator simulator = new Simulator(size, size, true, 0);
+            Field field = simulator.getField();
+            int scale = Math.max(1, Math.min(6, RENDER_PIXELS / size));
+            BufferedImage target = new BufferedImage(size * scale, size * scale, BufferedImage.TYPE_INT_RGB);
+            Graphics g = target.getGraphics();
+
+            long start = System.nanoTime();
+            for(int frame = 0; frame < frames; frame++) {
+                for(int row = 0; row < size; row++) {
+                    for(int col = 0; col < size; col++) {
+                        g.setColor(colors[field.getSpeciesAt(row, col)]);
+                        g.fillRect(col * scale, row * scale, scale - 1, scale - 1);
+                    }
+                }
+            }
+            long perCell = System.nanoTime() - start;
+
+            FieldRenderer renderer = new FieldRenderer(size, size, Color.GRAY);
+            for(byte code = 0; code < Species.COUNT; code++) {
+                renderer.setColor(code, colors[code]);
+            }
+            FieldFrame fieldFrame = new FieldFrame(field);
+            fieldFrame.capture(0, field, "", "", "");
+            start = System.nanoTime();
+            for(int frame = 0; frame < frames; frame++) {
+                renderer.render(fieldFrame);
+                renderer.draw(g, size * scale, size * scale);
+            }
+            long raster = System.nanoTime() - start;
+            g.dispose();
+            System.out.println(size + ", " + perCell / 1e6 / frames + ", " + raster / 1e6 / frames);
+        }
+    }
+
+    /**
+     * Report the time to bring the image of a field up to date after
+     * a number of its cells, chosen at random, have changed: by
+     * drawing every cell, and by drawing only the chunks of cells the
+     * field has noted as changed. The time to capture each frame,
+     * which the simulation pays rather than the view, is reported
+     * apart.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param changes The numbers of cells changed between frames.
+     * @param frames The number of frames drawn for each.
+     */
+    public static void dirtyRendering(int depth, int width, int[] changes, int frames)
+    {
+        Random rand = new Random(0);
+        Field field = new Field(depth, width, true, rand);
+        for(int index = 0; index < depth * width; index++) {
+            field.placeSpecies(index, (byte) rand.nextInt(Species.OTHER));
+        }
+        FieldRenderer renderer = new FieldRenderer(depth, width, Color.GRAY);
+        FieldFrame fieldFrame = new FieldFrame(field);
+        fieldFrame.capture(0, field, "", "", "");
+        renderer.update(fieldFrame);
+        System.out.println("cells changed, capture ms, every cell ms, changed chunks ms");
+        // The first round only warms up the compiler.
+        for(int round = 0; round < 2; round++) {
+            for(int count : changes) {
+                long capture = 0;
+                long full = 0;
+                long partial = 0;
+                for(int frame = 0; frame < frames; frame++) {
+                    for(int i = 0; i < count; i++) {
+                        field.placeSpecies(rand.nextInt(depth * width), (byte) rand.nextInt(Species.OTHER));
+                    }
+                    long start = System.nanoTime();
+                    fieldFrame.capture(frame, field, "", "", "");
+                    capture += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    renderer.update(fieldFrame);
+                    partial += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    renderer.render(fieldFrame);
+                    full += System.nanoTime() - start;
+                }
+                if(round == 1) {
+                    System.out.println(count + ", " + capture / 1e6 / frames + ", " +
+                                       full / 1e6 / frames + ", " + partial / 1e6 / frames);
+                }
+            }
+        }
+    }
+
+    /**
+     * Report the time taken by a DensityRenderer for square fields of
+     * growing size, drawn into an image of the same size: to count a
+     * whole field, to bring the counts up to date after a number of
+     * cells have changed, and to draw the image, both fitting the
+     * whole field and zoomed in to twice that.
+     * @param sizes The widths and depths of the fields.
+     * @param pixels The width and height of the image.
+     * @param changes The number of cells changed between frames.
+     * @param frames The number of frames drawn for each.
+     */
+    public static void levelOfDetail(int[] sizes, int pixels, int changes, int frames)
+    {
+        System.out.println("size, load ms, update ms, fit render ms, zoomed render ms");
+        // The first field only warms up the compiler.
+        for(int round = 0; round <= sizes.length; round++) {
+            int size = sizes[Math.max(round - 1, 0)];
+            Random rand = new Random(0);
+            Field field = new Field(size, size, true, rand);
+            for(int index = 0; index < size * size; index++) {
+                field.placeSpecies(index, (byte) rand.nextInt(Species.OTHER));
+            }
+            // The pyramid holds the frame counted last, so a second
+            // frame is filled in while it does.
+            FieldFrame[] fieldFrames = new FieldFrame[2];
+            fieldFrames[0] = new FieldFrame(field);
+            fieldFrames[1] = new FieldFrame(fieldFrames[0]);
+            fieldFrames[0].capture(0, field, "", "", "");
+            DensityPyramid pyramid = new DensityPyramid(size, size);
+            long start = System.nanoTime();
+            pyramid.update(fieldFrames[0]);
+            long load = System.nanoTime() - start;
+
+            long update = 0;
+            for(int frame = 1; frame <= frames; frame++) {
+                for(int i = 0; i < changes; i++) {
+                    field.placeSpecies(rand.nextInt(size * size), (byte) rand.nextInt(Species.OTHER));
+                }
+                FieldFrame fieldFrame = fieldFrames[frame % 2];
+                fieldFrame.capture(frame, field, "", "", "");
+                start = System.nanoTime();
+                pyramid.update(fieldFrame);
+                update += System.nanoTime() - start;
+            }
+
+            DensityRenderer renderer = new DensityRenderer(size, size, Color.GRAY, Color.DARK_GRAY);
+            renderer.setSize(pixels, pixels);
+            renderer.update(fieldFrames[frames % 2]);
+
+            double fit = (double) size / pixels;
+            long fitted = 0;
+            long zoomed = 0;
+            for(int frame = 0; frame < frames; frame++) {
+                // Pan a little each frame, so that every frame is drawn.
+                renderer.setViewport(0, frame, fit);
+                start = System.nanoTime();
+                renderer.refresh();
+                fitted += System.nanoTime() - start;
+                renderer.setViewport(size / 4, size / 4 + frame, fit / 2);
+                start = System.nanoTime();
+                renderer.refresh();
+                zoomed += System.nanoTime() - start;
+            }
+            if(round > 0) {
+                System.out.println(size + ", " + load / 1e6 + ", " + update / 1e6 / frames + ", " +
+                                   fitted / 1e6 / frames + ", " + zoomed / 1e6 / frames);
+            }
+        }
+    }
+
+    /**
+     * Report the time taken by a TileCache to show the same viewport
+     * onto square fields of growing size, while a number of cells
+     * change between frames: both panning a few cells each frame, so
+     * that tiles come into view, and standing still. The time to
+     * capture each frame, which the simulation pays, is left out.
+     * @param sizes The widths and depths of the fields.
+     * @param pixels The width and height of the viewport, in pixels.
+     * @param scale The number of pixels across a cell.
+     * @param changes The number of cells changed between frames.
+     * @param frames The number of frames drawn for each.
+     */
+    public static void viewport(int[] sizes, int pixels, int scale, int changes, int frames)
+    {
+        System.out.println("size, panning ms, still ms, tiles cached");
+        BufferedImage target = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+        Graphics g = target.getGraphics();
+        // The first field only warms up the compiler.
+        for(int round = 0; round <= sizes.length; round++) {
+            int size = sizes[Math.max(round - 1, 0)];
+            Random rand = new Random(0);
+            Field field = new Field(size, size, true, rand);
+            for(int index = 0; index < size * size; index++) {
+                field.placeSpecies(index, (byte) rand.nextInt(Species.OTHER));
+            }
+            FieldFrame fieldFrame = new FieldFrame(field);
+            TileCache tiles = new TileCache(size, size, Color.GRAY);
+            long panning = 0;
+            long still = 0;
+            for(int frame = 0; frame < 2 * frames; frame++) {
+                for(int i = 0; i < changes; i++) {
+                    field.placeSpecies(rand.nextInt(size * size), (byte) rand.nextInt(Species.OTHER));
+                }
+                fieldFrame.capture(frame, field, "", "", "");
+                boolean pan = frame < frames;
+                long start = System.nanoTime();
+                tiles.changed(fieldFrame);
+                tiles.draw(g, fieldFrame, 0, pan ? frame * 8 : frames * 8, scale, pixels, pixels);
+                if(pan) {
+                    panning += System.nanoTime() - start;
+                }
+                else {
+                    still += System.nanoTime() - start;
+                }
+            }
+            if(round > 0) {
+                System.out.println(size + ", " + panning / 1e6 / frames + ", " + still / 1e6 / frames +
+                                   ", " + tiles.getSize());
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * @return The number of bytes the current thread has allocated.
+     */
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Fill a field with plants, some of which are dead.
+     * @param field The field, which is cleared first.
+     * @param size The number of plants.
+     * @param deaths The number of plants that are dead, spread evenly.
+     * @return The plants, in the order of the cells.
+     */
+    private static List<Plant> createPlants(Field field, int size, int deaths)
+    {
+        field.clear();
+        List<Plant> plants = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            Location location = new Location(i / field.getWidth(), i % field.getWidth());
+            plants.add(new Plant(false, field, location));
+        }
+        for(int d = 0; d < deaths; d++) {
+            plants.get((int) ((long) d * size / deaths)).setDead();
+        }
+        return plants;
+    }
+
+    /**
+     * Collect garbage and return the heap in use.
+     * @return The number of bytes in use.
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,435 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary format in which the whole state of a simulation is saved,
+ * so that it can be restored later and carry on exactly as it would
+ * have. The file is written and read through a file channel, a buffer
+ * at a time, with a fixed-size record per participant. It is laid out,
+ * big-endian, as:
+ *
+ *     int    MAGIC
+ *     short  VERSION
+ *     byte   engine, the ordinal of Simulator.Engine
+ *     int    depth and width of the field
+ *     int    step
+ *     byte   weather: 0 sunny, 1 rainy, 2 foggy
+ *     long   state of the simulation's random numbers
+ *     long   seed of the TILES or TWO_PHASE engine, 0 for others
+ *     int    number of participants
+ *
+ * followed by one record per participant, in the order they act:
+ *
+ *     byte   species code
+ *     byte   flags: MALE and INFECTED
+ *     int    cell index, as given by Field.getIndex
+ *     int    age
+ *     int    food level
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Checkpoint
+{
+    // The first bytes of every checkpoint: "SIMC".
+    static final int MAGIC = 0x53494D43;
+    // The version of the format written.
+    static final short VERSION = 1;
+    // The size of the buffer between the channel and the records.
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The size of the header and of each record, in bytes.
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 4 + 4 + 4 + 1 + 8 + 8 + 4;
+    private static final int RECORD_SIZE = 1 + 1 + 4 + 4 + 4;
+    // The flags of a record.
+    private static final byte MALE = 1;
+    private static final byte INFECTED = 2;
+    // The weather codes.
+    private static final byte SUNNY = 0;
+    private static final byte RAINY = 1;
+    private static final byte FOGGY = 2;
+
+    /**
+     * Something the state of a simulation can be written to: the
+     * header first, then exactly as many participants as it announces.
+     */
+    public interface Sink
+    {
+        /**
+         * Write the header.
+         * @param engine The engine of the simulation.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         * @param step The current step.
+         * @param weather The current weather.
+         * @param randomState The state of the simulation's random numbers.
+         * @param engineSeed The seed of the TILES or TWO_PHASE engine, or 0.
+         * @param count The number of participants that follow.
+         * @throws IOException If the header cannot be written.
+         */
+        void writeHeader(Simulator.Engine engine, int depth, int width, int step, Weather weather,
+                         long randomState, long engineSeed, int count) throws IOException;
+
+        /**
+         * Write the record of the next participant.
+         * @param species Its species code.
+         * @param cell The index of its cell.
+         * @param age Its age.
+         * @param foodLevel Its food level.
+         * @param male Whether it is male.
+         * @param infected Whether it is infected.
+         * @throws IOException If the record cannot be written.
+         */
+        void writeParticipant(byte species, int cell, int age, int foodLevel,
+                              boolean male, boolean infected) throws IOException;
+    }
+
+    /**
+     * Writes a checkpoint to a file. The file only replaces any
+     * earlier one at the same path once it is complete and closed.
+     */
+    public static class Writer implements Sink, Closeable
+    {
+        // The file being written, and where it goes once complete.
+        private Path temporary, path;
+        // The channel to the file being written.
+        private FileChannel channel;
+        // The bytes not yet written to the channel.
+        private ByteBuffer buffer;
+        // The number of participants announced and still to be written.
+        private int remaining;
+
+        /**
+         * Start writing a checkpoint.
+         * @param path Where the checkpoint goes.
+         * @throws IOException If the file cannot be created.
+         */
+        public Writer(Path path) throws IOException
+        {
+            this.path = path;
+            temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            remaining = -1;
+        }
+
+        /**
+         * Write the header.
+         * @param engine The engine of the simulation.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         * @param step The current step.
+         * @param weather The current weather.
+         * @param randomState The state of the simulation's random numbers.
+         * @param engineSeed The seed of the TILES or TWO_PHASE engine, or 0.
+         * @param count The number of participants that follow.
+         * @throws IOException If the file cannot be written.
+         */
+        public void writeHeader(Simulator.Engine engine, int depth, int width, int step, Weather weather,
+                                long randomState, long engineSeed, int count) throws IOException
+        {
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.put((byte) engine.ordinal());
+            buffer.putInt(depth);
+            buffer.putInt(width);
+            buffer.putInt(step);
+            buffer.put(weather.isRainy() ? RAINY : weather.isFoggy() ? FOGGY : SUNNY);
+            buffer.putLong(randomState);
+            buffer.putLong(engineSeed);
+            buffer.putInt(count);
+            remaining = count;
+        }
+
+        /**
+         * Write the record of the next participant.
+         * @param species Its species code.
+         * @param cell The index of its cell.
+         * @param age Its age.
+         * @param foodLevel Its food level.
+         * @param male Whether it is male.
+         * @param infected Whether it is infected.
+         * @throws IOException If the file cannot be written.
+         */
+        public void writeParticipant(byte species, int cell, int age, int foodLevel,
+                                     boolean male, boolean infected) throws IOException
+        {
+            if(remaining <= 0) {
+                throw new IllegalStateException("More participants than the header announced");
+            }
+            if(buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.put(species);
+            buffer.put((byte) ((male ? MALE : 0) | (infected ? INFECTED : 0)));
+            buffer.putInt(cell);
+            buffer.putInt(age);
+            buffer.putInt(foodLevel);
+            remaining--;
+        }
+
+        /**
+         * Finish the checkpoint and put it in place. If it is not
+         * complete, it is thrown away instead.
+         * @throws IOException If the file cannot be written.
+         */
+        public void close() throws IOException
+        {
+            try {
+                flush();
+                channel.force(false);
+            }
+            finally {
+                channel.close();
+            }
+            if(remaining != 0) {
+                Files.deleteIfExists(temporary);
+                throw new IOException("Checkpoint incomplete: " + Math.max(remaining, 0) +
+                                      " participants missing");
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Write out the buffered bytes.
+         */
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads a checkpoint. The header is read when the reader is
+     * created; the participants are then read one at a time, the
+     * reader holding the characteristics of the last one read.
+     */
+    public static class Reader implements Closeable
+    {
+        // The channel from the file.
+        private FileChannel channel;
+        // The bytes read from the channel and not yet used.
+        private ByteBuffer buffer;
+        // The header.
+        private Simulator.Engine engine;
+        private int depth, width, step;
+        private byte weather;
+        private long randomState, engineSeed;
+        private int count;
+        // The number of participants not yet read.
+        private int remaining;
+        // The last participant read.
+        private byte species, flags;
+        private int cell, age, foodLevel;
+
+        /**
+         * Open a checkpoint and read its header.
+         * @param path Where the checkpoint is.
+         * @throws IOException If the file cannot be read or is not a
+         *                     checkpoint of a version this reader knows.
+         */
+        public Reader(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+            try {
+                fill(HEADER_SIZE);
+                if(buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a checkpoint: " + path);
+                }
+                short version = buffer.getShort();
+                if(version != VERSION) {
+                    throw new IOException("Unsupported checkpoint version " + version);
+                }
+                int ordinal = buffer.get();
+                Simulator.Engine[] engines = Simulator.Engine.values();
+                if(ordinal < 0 || ordinal >= engines.length) {
+                    throw new IOException("Unknown engine " + ordinal);
+                }
+                engine = engines[ordinal];
+                depth = buffer.getInt();
+                width = buffer.getInt();
+                step = buffer.getInt();
+                weather = buffer.get();
+                randomState = buffer.getLong();
+                engineSeed = buffer.getLong();
+                count = buffer.getInt();
+                remaining = count;
+            }
+            catch(IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return The engine of the simulation.
+         */
+        public Simulator.Engine getEngine()
+        {
+            return engine;
+        }
+
+        /**
+         * @return The depth of the field.
+         */
+        public int getDepth()
+        {
+            return depth;
+        }
+
+        /**
+         * @return The width of the field.
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+
+        /**
+         * @return The step the checkpoint was taken at.
+         */
+        public int getStep()
+        {
+            return step;
+        }
+
+        /**
+         * Set a weather to the weather of the checkpoint.
+         * @param target The weather to set.
+         */
+        public void restoreWeather(Weather target)
+        {
+            target.setWeather(weather == RAINY, weather == FOGGY);
+        }
+
+        /**
+         * @return The state of the simulation's random numbers.
+         */
+        public long getRandomState()
+        {
+            return randomState;
+        }
+
+        /**
+         * @return The seed of the TILES or TWO_PHASE engine, or 0.
+         */
+        public long getEngineSeed()
+        {
+            return engineSeed;
+        }
+
+        /**
+         * @return The number of participants.
+         */
+        public int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Read the next participant.
+         * @return true if there was one, false if all have been read.
+         * @throws IOException If the file is cut short.
+         */
+        public boolean nextParticipant() throws IOException
+        {
+            if(remaining == 0) {
+                return false;
+            }
+            fill(RECORD_SIZE);
+            species = buffer.get();
+            flags = buffer.get();
+            cell = buffer.getInt();
+            age = buffer.getInt();
+            foodLevel = buffer.getInt();
+            remaining--;
+            return true;
+        }
+
+        /**
+         * @return The species code of the last participant read.
+         */
+        public byte getSpecies()
+        {
+            return species;
+        }
+
+        /**
+         * @return The cell index of the last participant read.
+         */
+        public int getCell()
+        {
+            return cell;
+        }
+
+        /**
+         * @return The age of the last participant read.
+         */
+        public int getAge()
+        {
+            return age;
+        }
+
+        /**
+         * @return The food level of the last participant read.
+         */
+        public int getFoodLevel()
+        {
+            return foodLevel;
+        }
+
+        /**
+         * @return true if the last participant read is male.
+         */
+        public boolean isMale()
+        {
+            return (flags & MALE) != 0;
+        }
+
+        /**
+         * @return true if the last participant read is infected.
+         */
+        public boolean isInfected()
+        {
+            return (flags & INFECTED) != 0;
+        }
+
+        /**
+         * Close the file.
+         * @throws IOException If it cannot be closed.
+         */
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+
+        /**
+         * Make sure the buffer holds at least the given number of
+         * bytes, reading more from the channel if needed.
+         */
+        private void fill(int needed) throws IOException
+        {
+            if(buffer.remaining() >= needed) {
+                return;
+            }
+            buffer.compact();
+            while(buffer.position() < needed) {
+                if(channel.read(buffer) < 0) {
+                    throw new IOException("Checkpoint is cut short");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
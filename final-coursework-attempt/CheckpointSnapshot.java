@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A copy in memory of the state of a simulation, taken as a checkpoint
+ * would be written, which can be written to a file later while the
+ * simulation carries on. The arrays are kept from one copy to the next,
+ * so a snapshot that is reused only grows when the population does.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class CheckpointSnapshot implements Checkpoint.Sink
+{
+    // The number of participants room is made for initially.
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The header.
+    private Simulator.Engine engine;
+    private int depth, width, step;
+    private Weather weather;
+    private long randomState, engineSeed;
+    // The participants, in the order they act.
+    private byte[] species;
+    private boolean[] male, infected;
+    private int[] cell, age, foodLevel;
+    // The number of participants copied.
+    private int count;
+
+    /**
+     * Create an empty snapshot.
+     */
+    public CheckpointSnapshot()
+    {
+        weather = new Weather(null);
+        species = new byte[INITIAL_CAPACITY];
+        male = new boolean[INITIAL_CAPACITY];
+        infected = new boolean[INITIAL_CAPACITY];
+        cell = new int[INITIAL_CAPACITY];
+        age = new int[INITIAL_CAPACITY];
+        foodLevel = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Copy the header, forgetting any participants copied before.
+     */
+    public void writeHeader(Simulator.Engine engine, int depth, int width, int step, Weather weather,
+                            long randomState, long engineSeed, int count)
+    {
+        this.engine = engine;
+        this.depth = depth;
+        this.width = width;
+        this.step = step;
+        this.weather.setWeather(weather.isRainy(), weather.isFoggy());
+        this.randomState = randomState;
+        this.engineSeed = engineSeed;
+        this.count = 0;
+        if(species.length < count) {
+            grow(count);
+        }
+    }
+
+    /**
+     * Copy the record of the next participant.
+     */
+    public void writeParticipant(byte code, int index, int years, int food, boolean isMale, boolean isInfected)
+    {
+        if(count == species.length) {
+            grow(count * 2);
+        }
+        species[count] = code;
+        cell[count] = index;
+        age[count] = years;
+        foodLevel[count] = food;
+        male[count] = isMale;
+        infected[count] = isInfected;
+        count++;
+    }
+
+    /**
+     * @return The step the snapshot was taken at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The number of participants copied.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Write the snapshot to a checkpoint file.
+     * @param path Where to write the checkpoint.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path path) throws IOException
+    {
+        try(Checkpoint.Writer out = new Checkpoint.Writer(path)) {
+            out.writeHeader(engine, depth, width, step, weather, randomState, engineSeed, count);
+            for(int i = 0; i < count; i++) {
+                out.writeParticipant(species[i], cell[i], age[i], foodLevel[i], male[i], infected[i]);
+            }
+        }
+    }
+
+    /**
+     * Make the arrays larger.
+     * @param capacity The number of participants to make room for.
+     */
+    private void grow(int capacity)
+    {
+        species = Arrays.copyOf(species, capacity);
+        male = Arrays.copyOf(male, capacity);
+        infected = Arrays.copyOf(infected, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+        age = Arrays.copyOf(age, capacity);
+        foodLevel = Arrays.copyOf(foodLevel, capacity);
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes checkpoints of a simulation on a background thread, so that
+ * the simulation only stops for as long as it takes to copy its state
+ * into memory. The copies are made into a fixed number of snapshots,
+ * which are reused: while one is being written, the next checkpoint
+ * is copied into another. If every snapshot is still waiting to be
+ * written, taking a checkpoint waits until one is free, which keeps
+ * memory bounded and slows the simulation down to the pace of the
+ * disk. The time spent waiting and copying is recorded.
+ *
+ * A checkpoint that fails to be written is reported by the next call
+ * to checkpoint or await, which throws an UncheckedIOException.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class CheckpointWriter
+{
+    // The number of snapshots used when none is given: one being
+    // written and one being copied into.
+    private static final int DEFAULT_BUFFERS = 2;
+
+    // The snapshots free to be copied into.
+    private BlockingQueue<CheckpointSnapshot> free;
+    // The thread writing the snapshots.
+    private ExecutorService writer;
+    // The number of checkpoints taken and written.
+    private AtomicLong taken, written;
+    // The time the simulation spent waiting for a free snapshot, and copying.
+    private AtomicLong blockedNanos, copyNanos;
+    // The time the last checkpoint took to write, and the longest.
+    private volatile long lastWriteNanos;
+    private AtomicLong longestWriteNanos;
+    // A failure to write a checkpoint not yet reported, or null.
+    private AtomicReference<IOException> failure;
+
+    /**
+     * Create a writer with two snapshots.
+     */
+    public CheckpointWriter()
+    {
+        this(DEFAULT_BUFFERS);
+    }
+
+    /**
+     * Create a writer with the given number of snapshots.
+     * @param buffers The number of snapshots, at least one.
+     */
+    public CheckpointWriter(int buffers)
+    {
+        if(buffers < 1) {
+            throw new IllegalArgumentException("A checkpoint writer needs at least one buffer");
+        }
+        free = new ArrayBlockingQueue<>(buffers);
+        for(int i = 0; i < buffers; i++) {
+            free.add(new CheckpointSnapshot());
+        }
+        writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        taken = new AtomicLong();
+        written = new AtomicLong();
+        blockedNanos = new AtomicLong();
+        copyNanos = new AtomicLong();
+        longestWriteNanos = new AtomicLong();
+        failure = new AtomicReference<>();
+    }
+
+    /**
+     * Take a checkpoint of a simulation: copy its state, waiting for
+     * a free snapshot if need be, and have it written in the background.
+     * Checkpoints are written in the order they are taken.
+     * @param simulator The simulation, which must not be stepped
+     *                  while its state is copied.
+     * @param path Where to write the checkpoint.
+     * @throws UncheckedIOException If an earlier checkpoint could not
+     *                              be written; none is then taken.
+     */
+    public void checkpoint(Simulator simulator, Path path)
+    {
+        reportFailure();
+        long start = System.nanoTime();
+        CheckpointSnapshot snapshot;
+        try {
+            snapshot = free.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a checkpoint buffer", e);
+        }
+        long copying = System.nanoTime();
+        blockedNanos.addAndGet(copying - start);
+        try {
+            simulator.capture(snapshot);
+        }
+        catch(IOException | RuntimeException e) {
+            free.add(snapshot);
+            throw new IllegalStateException("Could not copy the simulation", e);
+        }
+        copyNanos.addAndGet(System.nanoTime() - copying);
+        taken.incrementAndGet();
+        writer.execute(() -> write(snapshot, path));
+    }
+
+    /**
+     * Wait until every checkpoint taken has been written.
+     * @throws UncheckedIOException If one could not be written.
+     */
+    public void await()
+    {
+        try {
+            // The thread writes in order, so once this has run, so has
+            // every checkpoint taken before.
+            writer.submit(() -> { }).get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Checkpoint writer failed", e.getCause());
+        }
+        reportFailure();
+    }
+
+    /**
+     * Write the checkpoints still waiting, then stop the background thread.
+     */
+    public void close()
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of checkpoints taken.
+     */
+    public long getCheckpointsTaken()
+    {
+        return taken.get();
+    }
+
+    /**
+     * @return The number of checkpoints written.
+     */
+    public long getCheckpointsWritten()
+    {
+        return written.get();
+    }
+
+    /**
+     * @return The total time, in nanoseconds, the simulation spent
+     *         waiting for a free snapshot because writing fell behind.
+     */
+    public long getBlockedNanos()
+    {
+        return blockedNanos.get();
+    }
+
+    /**
+     * @return The total time, in nanoseconds, spent copying the state.
+     */
+    public long getCopyNanos()
+    {
+        return copyNanos.get();
+    }
+
+    /**
+     * @return The time, in nanoseconds, the last checkpoint took to write.
+     */
+    public long getLastWriteNanos()
+    {
+        return lastWriteNanos;
+    }
+
+    /**
+     * @return The longest time, in nanoseconds, a checkpoint took to write.
+     */
+    public long getLongestWriteNanos()
+    {
+        return longestWriteNanos.get();
+    }
+
+    /**
+     * @return A failure to write a checkpoint that checkpoint and
+     *         await have not yet reported, or null if there is none.
+     */
+    public IOException getFailure()
+    {
+        return failure.get();
+    }
+
+    /**
+     * Throw a failure to write a checkpoint, if there is one not yet
+     * reported. It is reported only once.
+     */
+    private void reportFailure()
+    {
+        IOException failed = failure.getAndSet(null);
+        if(failed != null) {
+            throw new UncheckedIOException("Could not write a checkpoint", failed);
+        }
+    }
+
+    /**
+     * Write a snapshot and hand it back to be copied into again.
+     * @param snapshot The snapshot.
+     * @param path Where to write it.
+     */
+    private void write(CheckpointSnapshot snapshot, Path path)
+    {
+        long start = System.nanoTime();
+        try {
+            snapshot.write(path);
+            written.incrementAndGet();
+        }
+        catch(IOException e) {
+            // Only the first of several failures in a row is kept.
+            failure.compareAndSet(null, e);
+        }
+        finally {
+            lastWriteNanos = System.nanoTime() - start;
+            longestWriteNanos.accumulateAndGet(lastWriteNanos, Math::max);
+            free.add(snapshot);
+        }
+    }
+}
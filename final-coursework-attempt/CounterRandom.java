@@ -0,0 +1,260 @@
+import java.util.Random;
+
+/**
+ * Random numbers worked out from a key rather than drawn one after
+ * the other. Every number is a function of the seed and of a counter
+ * made of a step, a subject (an entity id or a cell index), a purpose
+ * and an index, so it does not matter in which order, or on which
+ * thread, the numbers are asked for: the same counter always gives the
+ * same number. The function is Philox-4x32 with ten rounds, which turns
+ * a 128-bit counter into 128 random-looking bits.
+ *
+ * Nothing is changed by asking for a number, so one generator can be
+ * shared by any number of threads. A Stream gives a sequence of numbers
+ * for one step, subject and purpose, and the fill methods give one
+ * number for each of a run of subjects, for loops over many entities.
+ * A Stream is also a java.util.Random, for code written to draw from
+ * the random number generator of the simulation.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class CounterRandom
+{
+    // What the numbers are used for, keeping the numbers of different
+    // uses apart.
+    public static final int NEIGHBOURS = 0;
+    public static final int BREEDING = 1;
+    public static final int CLAIM = 2;
+    public static final int POPULATE = 3;
+    public static final int TILE = 4;
+    // The multipliers and key increments of Philox-4x32.
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+    // The number of rounds.
+    private static final int ROUNDS = 10;
+    // The scale turning 53 random bits into a number between 0 and 1.
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    // The seed, split into the two words of the key.
+    private int key0, key1;
+
+    /**
+     * Create a generator for the given seed.
+     * @param seed The seed.
+     */
+    public CounterRandom(long seed)
+    {
+        key0 = (int) seed;
+        key1 = (int) (seed >>> 32);
+    }
+
+    /**
+     * @return The seed of the generator.
+     */
+    public long getSeed()
+    {
+        return (key0 & 0xFFFFFFFFL) | ((long) key1 << 32);
+    }
+
+    /**
+     * Return 64 random bits for a counter.
+     * @param step The step.
+     * @param subject The entity or cell.
+     * @param purpose What the bits are used for.
+     * @param index Which of the numbers of that purpose.
+     * @return The bits.
+     */
+    public long nextLong(int step, int subject, int purpose, int index)
+    {
+        int[] block = new int[4];
+        philox(step, subject, purpose, index, block);
+        return ((long) block[0] << 32) | (block[1] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Return a random number between 0 and 1 for a counter.
+     * @param step The step.
+     * @param subject The entity or cell.
+     * @param purpose What the number is used for.
+     * @return The number.
+     */
+    public double nextDouble(int step, int subject, int purpose)
+    {
+        return (nextLong(step, subject, purpose, 0) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Put a random number between 0 and 1 in a buffer for each of a
+     * run of subjects: the number of subject first + i goes in
+     * out[offset + i].
+     * @param step The step.
+     * @param first The first subject.
+     * @param purpose What the numbers are used for.
+     * @param out The buffer.
+     * @param offset Where in the buffer to start.
+     * @param length The number of subjects.
+     */
+    public void fill(int step, int first, int purpose, double[] out, int offset, int length)
+    {
+        int[] block = new int[4];
+        for(int i = 0; i < length; i++) {
+            philox(step, first + i, purpose, 0, block);
+            long bits = ((long) block[0] << 32) | (block[1] & 0xFFFFFFFFL);
+            out[offset + i] = (bits >>> 11) * DOUBLE_UNIT;
+        }
+    }
+
+    /**
+     * Put a random number between 0 and bound - 1 in a buffer for each
+     * of a run of subjects: the number of subject first + i goes in
+     * out[offset + i].
+     * @param step The step.
+     * @param first The first subject.
+     * @param purpose What the numbers are used for.
+     * @param bound The bound of the numbers, greater than zero.
+     * @param out The buffer.
+     * @param offset Where in the buffer to start.
+     * @param length The number of subjects.
+     */
+    public void fill(int step, int first, int purpose, int bound, int[] out, int offset, int length)
+    {
+        int[] block = new int[4];
+        for(int i = 0; i < length; i++) {
+            philox(step, first + i, purpose, 0, block);
+            out[offset + i] = below(block[0], bound);
+        }
+    }
+
+    /**
+     * @return A new stream of numbers of this generator.
+     */
+    public Stream stream()
+    {
+        return new Stream();
+    }
+
+    /**
+     * Scale 32 random bits to a number between 0 and bound - 1.
+     */
+    private static int below(int bits, int bound)
+    {
+        return (int) (((bits & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+
+    /**
+     * Work out the block of random bits of a counter.
+     * @param c0 The step.
+     * @param c1 The subject.
+     * @param c2 The purpose.
+     * @param c3 The index.
+     * @param out The four words of the block.
+     */
+    private void philox(int c0, int c1, int c2, int c3, int[] out)
+    {
+        int k0 = key0;
+        int k1 = key1;
+        for(int round = 0; round < ROUNDS; round++) {
+            long product0 = M0 * (c0 & 0xFFFFFFFFL);
+            long product1 = M1 * (c2 & 0xFFFFFFFFL);
+            int next0 = (int) (product1 >>> 32) ^ c1 ^ k0;
+            int next2 = (int) (product0 >>> 32) ^ c3 ^ k1;
+            c1 = (int) product1;
+            c3 = (int) product0;
+            c0 = next0;
+            c2 = next2;
+            k0 += W0;
+            k1 += W1;
+        }
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+    }
+
+    /**
+     * The sequence of numbers of one step, subject and purpose. The
+     * sequence is the same each time it is started, and a stream is
+     * meant to be used by one thread. Its seed is that of the
+     * generator; setSeed has no effect on it.
+     */
+    public class Stream extends Random
+    {
+        // The version of the serialized form.
+        private static final long serialVersionUID = 1L;
+        // The counter of the sequence.
+        private int step, subject, purpose;
+        // The index of the next block.
+        private int index;
+        // The current block, and how many of its words are used.
+        private int[] block;
+        private int used;
+
+        /**
+         * Create a stream; it must be started before use.
+         */
+        private Stream()
+        {
+            block = new int[4];
+            used = block.length;
+        }
+
+        /**
+         * Start the sequence of a step, subject and purpose.
+         * @param step The step.
+         * @param subject The entity or cell.
+         * @param purpose What the numbers are used for.
+         */
+        public void reset(int step, int subject, int purpose)
+        {
+            this.step = step;
+            this.subject = subject;
+            this.purpose = purpose;
+            index = 0;
+            used = block.length;
+        }
+
+        /**
+         * @return The next 32 random bits.
+         */
+        public int nextBits()
+        {
+            if(used == block.length) {
+                philox(step, subject, purpose, index++, block);
+                used = 0;
+            }
+            return block[used++];
+        }
+
+        /**
+         * Generate the next random bits, for the methods of Random.
+         * @param bits The number of bits.
+         * @return The bits.
+         */
+        @Override
+        protected int next(int bits)
+        {
+            return nextBits() >>> (32 - bits);
+        }
+
+        /**
+         * @return A random number between 0 and bound - 1.
+         */
+        @Override
+        public int nextInt(int bound)
+        {
+            return below(nextBits(), bound);
+        }
+
+        /**
+         * @return A random number between 0 and 1.
+         */
+        @Override
+        public double nextDouble()
+        {
+            long bits = ((long) nextBits() << 32) | (nextBits() & 0xFFFFFFFFL);
+            return (bits >>> 11) * DOUBLE_UNIT;
+        }
+    }
+}
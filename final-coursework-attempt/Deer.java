@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 /**
@@ -13,18 +12,20 @@ public class Deer extends Animal
     // Characteristics shared by all deers (class variables).
 
     // The age at which a deer can start to breed.
-    private static final int BREEDING_AGE = 5;
+    static final int BREEDING_AGE = 5;
     // The age to which a deer can live.
-    private static final int MAX_AGE = 50;
+    static final int MAX_AGE = 50;
     // The likelihood of a deer breeding.
-    private static final double BREEDING_PROBABILITY = 0.43;
+    static final double BREEDING_PROBABILITY = 0.43;
     //The probability of being a male
-    private static final double MALE_PROBABILITY = 0.5;
+    static final double MALE_PROBABILITY = 0.5;
     // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 3;
+    static final int MAX_LITTER_SIZE = 3;
     // The food value of a single plant. In effect, this is the
     // number of steps a deer can go before it has to eat again.
-    private static final int PLANT_FOOD_VALUE = 10;
+    static final int PLANT_FOOD_VALUE = 10;
+    // The food level of a deer when it is created.
+    static final int INITIAL_FOOD_LEVEL = 10;
     
     
     // Individual characteristics (instance fields).
@@ -51,16 +52,28 @@ public class Deer extends Animal
         // Presets the gender
         isMale = true;
         // Presets the food level
-        foodLevel = 10;
+        foodLevel = INITIAL_FOOD_LEVEL;
         age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            age = getRandom().nextInt(MAX_AGE);
         }
         if(randomGender) {
-            if (rand.nextDouble() <= MALE_PROBABILITY){
+            if (getRandom().nextDouble() <= MALE_PROBABILITY){
                 isMale = false;
             }
         }
+        recordBirth();
+    }
+
+    /**
+     * Deers only act during sunny or foggy days.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     * @return true if deers act at the given time and weather.
+     */
+    static boolean canAct(Time time, Weather weather)
+    {
+        return time.isDay() && (weather.isSunny() || weather.isFoggy());
     }
 
     /**
@@ -75,17 +88,19 @@ public class Deer extends Animal
     public void act(List<Animal> newDeers, Time time, Weather weather)
     {
         //Deers act during the day despite it is sunny or foggy.
-        if (time.isDay() && (weather.isSunny() || weather.isFoggy())){
+        if (canAct(time, weather)){
             incrementAge();
-            // They infect in case they are infected
-            if(isAlive() && isInfected()) infect();
             if(isAlive()) {
-                giveBirth(newDeers);            
+                // Every step of the act works from one look at the neighbours.
+                Surroundings around = lookAround();
+                // They infect in case they are infected
+                if(isInfected()) infect(around);
+                giveBirth(newDeers, around);            
                 // Move towards a source of food if found.
-                Location newLocation = findFood();
+                Location newLocation = findFood(around);
                 if(newLocation == null) { 
                     // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
+                    newLocation = around.takeFreeLocation(Species.DEER);
                 }
                 // See if it was possible to move.
                 if(newLocation != null) {
@@ -113,22 +128,20 @@ public class Deer extends Animal
     /**
      * Look for plants adjacent to the current location.
      * Only the first live plant is eaten.
+     * @param around The snapshot of the deer's neighbourhood.
      * @return Where food was found, or null if it wasn't.
      */
-    private Location findFood()
+    private Location findFood(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Plant) {
-                Plant plant = (Plant) animal;
+        for(int i = 0; i < around.size(); i++) {
+            byte species = around.getSpecies(i);
+            if(species == Species.PLANT) {
+                Plant plant = (Plant) around.getOccupant(i);
                 if(plant.isAlive()) { 
                     plant.setDead();
+                    around.setSpecies(i, Species.EMPTY);
                     foodLevel = PLANT_FOOD_VALUE;
-                    return where;
+                    return around.getLocation(i);
                 }
             }
         }
@@ -139,16 +152,18 @@ public class Deer extends Animal
      * Check whether or not this deer is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newDeers A list to return newly born deer.
+     * @param around The snapshot of the deer's neighbourhood.
      */
-    private void giveBirth(List<Animal> newDeers)
+    private void giveBirth(List<Animal> newDeers, Surroundings around)
     {
-        // New deer are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New deer are born into free adjacent locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
+        int births = breed(around);
+        for(int b = 0; b < births; b++) {
+            Location loc = around.takeFreeLocation(Species.DEER);
+            if(loc == null) {
+                break;
+            }
             Deer young = new Deer(false, field, loc, true);
             newDeers.add(young);
             if (infected) {
@@ -160,19 +175,15 @@ public class Deer extends Animal
     /**
      * Look for deers adjacent to the current location.
      * Only the first live deer is taken into consideration.
+     * @param around The snapshot of the deer's neighbourhood.
      * @return If the deer has an adjacent deer with different gender.
      */
-    private boolean findPartner()
+    private boolean findPartner(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Deer) {
-                Deer deer = (Deer) animal;
-                if(isMale != deer.getGender() && rand.nextDouble() <= BREEDING_PROBABILITY) { 
+        for(int i = 0; i < around.size(); i++) {
+            if(around.getSpecies(i) == Species.DEER) {
+                Deer deer = (Deer) around.getOccupant(i);
+                if(isMale != deer.getGender() && getRandom().nextDouble() <= BREEDING_PROBABILITY) { 
                     return true;
                 }
                 else { 
@@ -186,13 +197,14 @@ public class Deer extends Animal
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param around The snapshot of the deer's neighbourhood.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(Surroundings around)
     {
         int births = 0;
-        if(canBreed() && findPartner()) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && findPartner(around)) {
+            births = getRandom().nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -214,4 +226,41 @@ public class Deer extends Animal
     {
         return isMale;
     }
+
+    /**
+     * @return The deer's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * @return The deer's food level.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * @return true if the deer is male.
+     */
+    boolean isMale()
+    {
+        return isMale;
+    }
+
+    /**
+     * Set the deer's age, food level and gender.
+     * @param age The age.
+     * @param foodLevel The food level.
+     * @param male Whether the deer is male.
+     */
+    void restore(int age, int foodLevel, boolean male)
+    {
+        this.age = age;
+        this.foodLevel = foodLevel;
+        isMale = male;
+    }
 }
@@ -0,0 +1,240 @@
+import java.util.Arrays;
+
+/**
+ * How many cells of each species there are in each square block of a
+ * field, at every level of detail: level k divides the field into
+ * blocks of 2^k by 2^k cells. A view too small to show a field one
+ * cell per pixel can then colour each pixel from the counts of one
+ * block about its size, at a cost that depends on the number of
+ * pixels rather than on the number of cells.
+ *
+ * The counts are kept up to date from FieldFrames: only the cells in
+ * the chunks a frame notes as changed are looked at, and each cell
+ * that changed moves one count at every level. What each cell was
+ * before is read from the frame given before, so the pyramid keeps
+ * no copy of the cells of its own; that frame must not be filled in
+ * again while the pyramid holds it.
+ *
+ * Levels 0 and 1 are not kept, their blocks being small enough to
+ * count from the cells of the frame held. Counts are held in chars,
+ * so no level above MAX_LEVEL is kept either; a view zoomed out
+ * further than that uses the blocks of the top level.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class DensityPyramid
+{
+    // The first level whose counts are kept.
+    public static final int FIRST_LEVEL = 2;
+    // The last level that may be kept: a block of 2^8 by 2^8 cells
+    // could hold more of a species than a char can count.
+    public static final int MAX_LEVEL = 7;
+
+    // The depth and width of the field.
+    private int depth, width;
+    // The frame last counted, or null before the first.
+    private FieldFrame current;
+    // The top level: the first at which one block covers the field,
+    // or MAX_LEVEL.
+    private int top;
+    // The number of rows and columns of blocks at each level.
+    private int[] rows, cols;
+    // The counts of each level kept, Species.COUNT for each block,
+    // the blocks in rows.
+    private char[][] counts;
+
+    /**
+     * Create a pyramid for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public DensityPyramid(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        top = 0;
+        while(top < MAX_LEVEL && ((depth - 1) >> top > 0 || (width - 1) >> top > 0)) {
+            top++;
+        }
+        rows = new int[top + 1];
+        cols = new int[top + 1];
+        counts = new char[top + 1][];
+        for(int level = 0; level <= top; level++) {
+            rows[level] = ((depth - 1) >> level) + 1;
+            cols[level] = ((width - 1) >> level) + 1;
+            if(level >= FIRST_LEVEL) {
+                counts[level] = new char[rows[level] * cols[level] * Species.COUNT];
+            }
+        }
+    }
+
+    /**
+     * Bring the counts up to date with a frame, and hold it in place
+     * of the frame given before. The first frame is counted in full;
+     * after that, only the chunks it notes as changed, which must be
+     * every chunk changed since the frame given before.
+     * @param frame The frame, of a field of the size given to the pyramid.
+     * @return true if any cell changed.
+     * @throws IllegalArgumentException If the frame is the one held.
+     */
+    public boolean update(FieldFrame frame)
+    {
+        if(frame == current) {
+            throw new IllegalArgumentException("The frame was counted before being filled in again");
+        }
+        FieldFrame previous = current;
+        current = frame;
+        if(previous == null) {
+            load(frame);
+            return true;
+        }
+        boolean changed = false;
+        for(int i = 0; i < frame.getChunkCount(); i++) {
+            int first = frame.getChunk(i) * Field.CHUNK_SIZE;
+            int end = Math.min(first + Field.CHUNK_SIZE, depth * width);
+            int row = first / width;
+            int col = first % width;
+            for(int index = first; index < end; index++) {
+                byte species = frame.getSpeciesAt(index);
+                byte before = previous.getSpeciesAt(index);
+                if(species != before) {
+                    move(row, col, before, species);
+                    changed = true;
+                }
+                if(++col == width) {
+                    col = 0;
+                    row++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Return the level whose blocks best match a number of cells
+     * per pixel: the largest no wider than a pixel.
+     * @param cellsPerPixel The number of cells across a pixel.
+     * @return The level, from 0 to the top level.
+     */
+    public int getLevel(double cellsPerPixel)
+    {
+        int level = 0;
+        while(level < top && (2 << level) <= cellsPerPixel) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return The top level.
+     */
+    public int getTopLevel()
+    {
+        return top;
+    }
+
+    /**
+     * Count the cells of each species in a block, in the frame held.
+     * @param level The level.
+     * @param row The row of the block, among the blocks of the level.
+     * @param col The column of the block, among the blocks of the level.
+     * @param into Where to put the count of each species, indexed by
+     *             species code; Species.COUNT long.
+     * @return The number of cells in the block, fewer than 4^level
+     *         for blocks at the bottom and right edges.
+     */
+    public int count(int level, int row, int col, int[] into)
+    {
+        int total = 0;
+        if(level >= FIRST_LEVEL) {
+            char[] levelCounts = counts[level];
+            int slot = (row * cols[level] + col) * Species.COUNT;
+            for(int species = 0; species < Species.COUNT; species++) {
+                into[species] = levelCounts[slot + species];
+                total += into[species];
+            }
+            return total;
+        }
+        Arrays.fill(into, 0);
+        int firstRow = row << level;
+        int firstCol = col << level;
+        int endRow = Math.min(firstRow + (1 << level), depth);
+        int endCol = Math.min(firstCol + (1 << level), width);
+        for(int r = firstRow; r < endRow; r++) {
+            for(int c = firstCol; c < endCol; c++) {
+                into[current.getSpeciesAt(r * width + c)]++;
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Count every cell of a frame afresh.
+     * @param frame The frame.
+     */
+    private void load(FieldFrame frame)
+    {
+        if(top < FIRST_LEVEL) {
+            return;
+        }
+        char[] bottom = counts[FIRST_LEVEL];
+        Arrays.fill(bottom, (char) 0);
+        int index = 0;
+        for(int row = 0; row < depth; row++) {
+            int rowSlot = (row >> FIRST_LEVEL) * cols[FIRST_LEVEL];
+            for(int col = 0; col < width; col++) {
+                byte species = frame.getSpeciesAt(index++);
+                bottom[(rowSlot + (col >> FIRST_LEVEL)) * Species.COUNT + species]++;
+            }
+        }
+        // Each block above is the sum of the four below it.
+        for(int level = FIRST_LEVEL + 1; level <= top; level++) {
+            char[] below = counts[level - 1];
+            char[] above = counts[level];
+            Arrays.fill(above, (char) 0);
+            for(int row = 0; row < rows[level - 1]; row++) {
+                for(int col = 0; col < cols[level - 1]; col++) {
+                    int from = (row * cols[level - 1] + col) * Species.COUNT;
+                    int to = ((row >> 1) * cols[level] + (col >> 1)) * Species.COUNT;
+                    for(int species = 0; species < Species.COUNT; species++) {
+                        above[to + species] += below[from + species];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the count of a cell from one species to another at every
+     * level kept.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param from The species it was.
+     * @param to The species it is.
+     */
+    private void move(int row, int col, byte from, byte to)
+    {
+        for(int level = FIRST_LEVEL; level <= top; level++) {
+            int slot = ((row >> level) * cols[level] + (col >> level)) * Species.COUNT;
+            counts[level][slot + from]--;
+            counts[level][slot + to]++;
+        }
+    }
+}
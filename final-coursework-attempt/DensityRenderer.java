@@ -0,0 +1,268 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Draws a field with more cells than there are pixels to show it,
+ * one pixel for a square of cells, coloured from the counts of a
+ * DensityPyramid. The image is the size of the view, not of the
+ * field, and each pixel is coloured from the counts of one block,
+ * so a frame costs time in proportion to the pixels shown, however
+ * large the field.
+ *
+ * Which part of the field is shown, and how many cells a pixel
+ * covers, is set by a viewport. A pixel may be coloured as the
+ * species most of the occupants of its cells are, or as the mean of
+ * the colours of its cells, empty ones included, which shows how
+ * densely each species lives there.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class DensityRenderer
+{
+    /**
+     * How a pixel is coloured from the cells it covers.
+     */
+    public enum Shading
+    {
+        // The colour of the species most of the occupants are.
+        DOMINANT,
+        // The mean of the colours of the cells.
+        DENSITY
+    }
+
+    // The counts of the cells.
+    private DensityPyramid pyramid;
+    // The image, and the pixels behind it, in rows.
+    private BufferedImage image;
+    private int[] pixels;
+    // The colour of each species, indexed by species code, as RGB,
+    // and of the pixels beyond the field.
+    private int[] palette;
+    private int outside;
+    // How pixels are coloured.
+    private Shading shading;
+    // The cell at the top left corner of the image, and the number
+    // of cells across a pixel.
+    private double top, left, cellsPerPixel;
+    // Whether the image must be drawn again, though no cell changed.
+    private boolean stale;
+    // The counts of the block being shaded.
+    private int[] blockCounts;
+    // The column of blocks at the centre of each column of pixels,
+    // or -1 beyond the field.
+    private int[] blockCols;
+
+    /**
+     * Create a renderer for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param unknown The colour of species given no colour.
+     * @param outside The colour of pixels beyond the field.
+     */
+    public DensityRenderer(int depth, int width, Color unknown, Color outside)
+    {
+        pyramid = new DensityPyramid(depth, width);
+        palette = new int[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            palette[code] = unknown.getRGB();
+        }
+        this.outside = outside.getRGB();
+        shading = Shading.DOMINANT;
+        blockCounts = new int[Species.COUNT];
+        setSize(1, 1);
+        fit();
+    }
+
+    /**
+     * Define the colour of a species.
+     * @param species The species code, Species.EMPTY for free cells.
+     * @param color The colour.
+     */
+    public void setColor(byte species, Color color)
+    {
+        palette[species] = color.getRGB();
+        stale = true;
+    }
+
+    /**
+     * Choose how pixels are coloured.
+     * @param shading How pixels are coloured.
+     */
+    public void setShading(Shading shading)
+    {
+        this.shading = shading;
+        stale = true;
+    }
+
+    /**
+     * Set the size of the image. The viewport is kept.
+     * @param pixelWidth The width of the image, in pixels.
+     * @param pixelHeight The height of the image, in pixels.
+     */
+    public void setSize(int pixelWidth, int pixelHeight)
+    {
+        pixelWidth = Math.max(pixelWidth, 1);
+        pixelHeight = Math.max(pixelHeight, 1);
+        if(image != null && image.getWidth() == pixelWidth && image.getHeight() == pixelHeight) {
+            return;
+        }
+        image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        blockCols = new int[pixelWidth];
+        stale = true;
+    }
+
+    /**
+     * Set which part of the field is shown.
+     * @param top The row at the top edge of the image; need not be whole.
+     * @param left The column at the left edge of the image; need not be whole.
+     * @param cellsPerPixel The number of cells across a pixel, at least 1.
+     */
+    public void setViewport(double top, double left, double cellsPerPixel)
+    {
+        cellsPerPixel = Math.max(cellsPerPixel, 1);
+        if(top != this.top || left != this.left || cellsPerPixel != this.cellsPerPixel) {
+            this.top = top;
+            this.left = left;
+            this.cellsPerPixel = cellsPerPixel;
+            stale = true;
+        }
+    }
+
+    /**
+     * Set the viewport to show the whole field, as large as the
+     * image allows.
+     */
+    public void fit()
+    {
+        double cells = Math.max((double) pyramid.getDepth() / image.getHeight(),
+                                (double) pyramid.getWidth() / image.getWidth());
+        setViewport(0, 0, cells);
+    }
+
+    /**
+     * Bring the counts up to date with a frame. The image is drawn
+     * again by the next refresh, if any cell changed.
+     * @param frame The frame, of a field of the size given to the renderer.
+     * @return true if any cell changed.
+     */
+    public boolean update(FieldFrame frame)
+    {
+        if(pyramid.update(frame)) {
+            stale = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Draw the image again, if a cell, the viewport, the size or a
+     * colour has changed since it was last drawn.
+     * @return true if the image was drawn.
+     */
+    public boolean refresh()
+    {
+        if(stale) {
+            render();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copy the image to a graphics context, one pixel to a pixel.
+     * @param g The graphics context.
+     */
+    public void draw(Graphics g)
+    {
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * @return The image.
+     */
+    public BufferedImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Colour every pixel from the block of the pyramid at its centre.
+     */
+    private void render()
+    {
+        stale = false;
+        int pixelWidth = image.getWidth();
+        int pixelHeight = image.getHeight();
+        int depth = pyramid.getDepth();
+        int width = pyramid.getWidth();
+        int level = pyramid.getLevel(cellsPerPixel);
+        // Every row of pixels crosses the same columns of blocks.
+        for(int x = 0; x < pixelWidth; x++) {
+            int col = (int) Math.floor(left + (x + 0.5) * cellsPerPixel);
+            blockCols[x] = col < 0 || col >= width ? -1 : col >> level;
+        }
+        int index = 0;
+        for(int y = 0; y < pixelHeight; y++) {
+            int row = (int) Math.floor(top + (y + 0.5) * cellsPerPixel);
+            if(row < 0 || row >= depth) {
+                for(int x = 0; x < pixelWidth; x++) {
+                    pixels[index++] = outside;
+                }
+                continue;
+            }
+            int blockRow = row >> level;
+            // Neighbouring pixels may fall in the same block.
+            int lastBlockCol = -1;
+            int color = outside;
+            for(int x = 0; x < pixelWidth; x++) {
+                int blockCol = blockCols[x];
+                if(blockCol < 0) {
+                    pixels[index++] = outside;
+                    continue;
+                }
+                if(blockCol != lastBlockCol) {
+                    int total = pyramid.count(level, blockRow, blockCol, blockCounts);
+                    color = shade(total);
+                    lastBlockCol = blockCol;
+                }
+                pixels[index++] = color;
+            }
+        }
+    }
+
+    /**
+     * Return the colour of a block from its counts.
+     * @param total The number of cells in the block.
+     * @return The colour, as RGB.
+     */
+    private int shade(int total)
+    {
+        if(shading == Shading.DOMINANT) {
+            int dominant = Species.EMPTY;
+            int most = 0;
+            for(int species = 0; species < Species.COUNT; species++) {
+                if(species != Species.EMPTY && blockCounts[species] > most) {
+                    dominant = species;
+                    most = blockCounts[species];
+                }
+            }
+            return palette[dominant];
+        }
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        for(int species = 0; species < Species.COUNT; species++) {
+            int count = blockCounts[species];
+            if(count > 0) {
+                int rgb = palette[species];
+                red += (long) ((rgb >> 16) & 0xFF) * count;
+                green += (long) ((rgb >> 8) & 0xFF) * count;
+                blue += (long) (rgb & 0xFF) * count;
+            }
+        }
+        return (int) (red / total) << 16 | (int) (green / total) << 8 | (int) (blue / total);
+    }
+}
@@ -11,7 +11,17 @@ public class Disease
     // Probability of being infected
     private double DISEASE_PROBABILITY = 0.001;
 
-    private static final Random rand = Randomizer.getRandom();
+    // The random number generator of the simulation.
+    private Random rand;
+
+    /**
+     * Create a disease drawing from the given random numbers.
+     * @param rand The random number generator of the simulation.
+     */
+    public Disease(Random rand)
+    {
+        this.rand = rand;
+    }
     
     /**
      * Generates a random number and compares too the
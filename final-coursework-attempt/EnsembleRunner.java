@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run an ensemble of independent, headless simulations in parallel.
+ * Every run has its own random number generator, time and weather,
+ * seeded from its own seed, so the trajectory of a run depends only
+ * on its seed and never on the number of threads or on the other
+ * runs.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class EnsembleRunner
+{
+    // The size of the field of every run.
+    private int depth, width;
+    // The number of steps of every run.
+    private int steps;
+    // The number of runs executed at the same time.
+    private int threads;
+
+    /**
+     * Create a runner using every available processor.
+     * @param depth Depth of the field of each run.
+     * @param width Width of the field of each run.
+     * @param steps The number of steps of each run.
+     */
+    public EnsembleRunner(int depth, int width, int steps)
+    {
+        this(depth, width, steps, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a runner.
+     * @param depth Depth of the field of each run.
+     * @param width Width of the field of each run.
+     * @param steps The number of steps of each run.
+     * @param threads The number of runs executed at the same time.
+     */
+    public EnsembleRunner(int depth, int width, int steps, int threads)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Run one simulation for each of the given seeds.
+     * A run stops early if it ceases to be viable.
+     * @param seeds The seed of each run.
+     * @return The trajectory of each run, in the order of the seeds.
+     */
+    public List<PopulationTrajectory> run(long[] seeds)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<PopulationTrajectory>> futures = new ArrayList<>();
+            for(long seed : seeds) {
+                futures.add(executor.submit(createRun(seed)));
+            }
+            List<PopulationTrajectory> trajectories = new ArrayList<>();
+            for(Future<PopulationTrajectory> future : futures) {
+                trajectories.add(future.get());
+            }
+            return trajectories;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ensemble run interrupted", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Ensemble run failed", e.getCause());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run the given number of simulations, seeded 0, 1, 2 and so on.
+     * @param runs The number of runs.
+     * @return The trajectory of each run, in the order of the seeds.
+     */
+    public List<PopulationTrajectory> run(int runs)
+    {
+        long[] seeds = new long[runs];
+        for(int i = 0; i < runs; i++) {
+            seeds[i] = i;
+        }
+        return run(seeds);
+    }
+
+    /**
+     * Create the task performing a single run.
+     * @param seed The seed of the run.
+     * @return A task returning the trajectory of the run.
+     */
+    private Callable<PopulationTrajectory> createRun(long seed)
+    {
+        return () -> {
+            Simulator simulator = new Simulator(depth, width, true, seed);
+            PopulationTrajectory trajectory = new PopulationTrajectory(seed, steps + 1);
+            trajectory.record(simulator.getField());
+            for(int step = 1; step <= steps && simulator.isViable(); step++) {
+                simulator.simulateOneStep();
+                trajectory.record(simulator.getField());
+            }
+            return trajectory;
+        };
+    }
+}
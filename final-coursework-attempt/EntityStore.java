@@ -0,0 +1,928 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A store for plants and animals that keeps their state in primitive
+ * arrays indexed by entity id, instead of as one object each. Every
+ * entity has a species code, an age, a food level, a few flags (alive,
+ * male, infected) and the index of the cell it occupies. The store
+ * marks the cells of a flat field with the species of their occupants,
+ * and runs the behaviour of every species as loops over its arrays,
+ * following the same rules as the Plant and Animal classes.
+ *
+ * Ids are dense: dead entities are removed at the end of each step,
+ * and the survivors keep their relative order, so entities act in the
+ * order in which they were created, just like in the object lists.
+ * Each entity also has a handle, which it keeps for life however its
+ * id changes. The handles of the dead are given out again with a new
+ * generation, so that the events of an entity that has died can be
+ * told from those of the one now holding its handle.
+ *
+ * Ages and food levels are not counted down step by step. Each species
+ * has a clock counting the steps in which it acted, and an entity keeps
+ * the clock reading at which its age and food level were last set, from
+ * which the current values follow. The step at which an entity dies of
+ * old age or hunger is worked out in advance and kept on a timing wheel
+ * per species, under the entity's handle and generation; it is worked
+ * out again only when the entity eats or is infected. An entity is
+ * then told it is due when its step comes, and dies when its turn to
+ * act comes, as the objects do. Events are dropped when they fall due
+ * if their entity has died, so the wheels never need renumbering.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class EntityStore
+{
+    // Bits of the flags of an entity.
+    private static final byte ALIVE = 1;
+    private static final byte MALE = 2;
+    private static final byte INFECTED = 4;
+    // Set on an entity that dies at its turn in the current step.
+    private static final byte DUE = 8;
+    // The death clock of an entity that does not die of old age or hunger.
+    private static final int NEVER = Integer.MAX_VALUE;
+    // The id stored in a cell that holds no entity.
+    private static final int NO_ENTITY = -1;
+    // The number of entities room is made for initially.
+    private static final int INITIAL_CAPACITY = 1024;
+    // The number of bytes each entity takes in the arrays.
+    private static final int BYTES_PER_ENTITY = 1 + 1 + 10 * 4;
+
+    // The field the entities live in.
+    private Field field;
+    // The state of each entity, indexed by id.
+    private byte[] species;
+    private byte[] flags;
+    private int[] cell;
+    // The age of each entity, at the clock reading it was last set.
+    private int[] ageBase;
+    private int[] ageClock;
+    // The food level of each entity, at the clock reading it was last set.
+    private int[] foodBase;
+    private int[] foodClock;
+    // The clock reading at which each entity dies of old age or hunger.
+    private int[] deathClock;
+    // The number of entities, dead or alive, with an id.
+    private int size;
+    // The handle of each entity, indexed by id.
+    private int[] handle;
+    // The id of the entity holding each handle, and the generation of
+    // each handle, counting the times it was given up.
+    private int[] idOf;
+    private int[] generation;
+    // The handles given out so far are all below this.
+    private int handleLimit;
+    // The handles given up, to be given out again.
+    private int[] freeHandles;
+    private int freeCount;
+    // The id of the entity in each cell of the field, or NO_ENTITY.
+    private int[] idAt;
+    // Which species act during the current step.
+    private boolean[] active;
+    // The number of steps in which each species has acted.
+    private int[] clock;
+    // The death events of each species, keyed by the species' clock.
+    private TimingWheel[] wheels;
+    // The entity acting, and the number of entities, at the start of the step.
+    private int actor;
+    private int stepCount;
+
+    /**
+     * Create an empty store for the given field.
+     * @param field The field the entities live in. It must use the flat layout.
+     */
+    public EntityStore(Field field)
+    {
+        assert field.isFlat() : "An entity store needs a field with the flat layout";
+        this.field = field;
+        species = new byte[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        cell = new int[INITIAL_CAPACITY];
+        ageBase = new int[INITIAL_CAPACITY];
+        ageClock = new int[INITIAL_CAPACITY];
+        foodBase = new int[INITIAL_CAPACITY];
+        foodClock = new int[INITIAL_CAPACITY];
+        deathClock = new int[INITIAL_CAPACITY];
+        handle = new int[INITIAL_CAPACITY];
+        idOf = new int[INITIAL_CAPACITY];
+        generation = new int[INITIAL_CAPACITY];
+        freeHandles = new int[INITIAL_CAPACITY];
+        idAt = new int[field.getDepth() * field.getWidth()];
+        Arrays.fill(idAt, NO_ENTITY);
+        active = new boolean[Species.COUNT];
+        clock = new int[Species.COUNT];
+        wheels = new TimingWheel[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            wheels[code] = new TimingWheel(0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Remove every entity. The field itself is not cleared.
+     */
+    public void clear()
+    {
+        Arrays.fill(idAt, NO_ENTITY);
+        Arrays.fill(clock, 0);
+        for(TimingWheel wheel : wheels) {
+            wheel.clear(0);
+        }
+        size = 0;
+        handleLimit = 0;
+        freeCount = 0;
+    }
+
+    /**
+     * @return The number of entities in the store.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Return the age of an entity.
+     * @param id The entity.
+     * @return Its age at the current step.
+     */
+    public int getAge(int id)
+    {
+        return ageBase[id] + ageingRate(id) * (clock[species[id]] - ageClock[id]);
+    }
+
+    /**
+     * Return the food level of an entity.
+     * @param id The entity.
+     * @return Its food level at the current step.
+     */
+    public int getFoodLevel(int id)
+    {
+        if(isHungry(species[id])) {
+            return foodBase[id] - (clock[species[id]] - foodClock[id]);
+        }
+        return foodBase[id];
+    }
+
+    /**
+     * Return the number of bytes the store's arrays take up,
+     * including its per-cell index of the field. The field itself
+     * adds one species code per cell; it keeps no handles or table
+     * of occupants for an engine using a store.
+     * @return The memory used by the store, in bytes.
+     */
+    public long getMemoryFootprint()
+    {
+        return (long) species.length * BYTES_PER_ENTITY + (long) idAt.length * 4;
+    }
+
+    /**
+     * Create an entity in the given cell, drawing its random
+     * characteristics in the same way as the constructor of its class.
+     * @param code The species code of the entity.
+     * @param index The index of the cell, which must be free.
+     * @param randomAge Whether the entity starts with a random age
+     *                  (and, for predators, a random food level).
+     * @return The id of the new entity.
+     */
+    public int spawn(byte code, int index, boolean randomAge)
+    {
+        Random rand = field.getRandom();
+        int id = allocate();
+        species[id] = code;
+        int startAge = 0;
+        int startFood = 0;
+        flags[id] = ALIVE;
+        cell[id] = index;
+        switch(code) {
+            case Species.PLANT:
+                if(randomAge) {
+                    startAge = rand.nextInt(Plant.MAX_AGE);
+                }
+                break;
+            case Species.RABBIT:
+                startFood = Rabbit.INITIAL_FOOD_LEVEL;
+                if(randomAge) {
+                    startAge = rand.nextInt(Rabbit.MAX_AGE);
+                }
+                break;
+            case Species.FOX:
+                if(randomAge) {
+                    startAge = rand.nextInt(Fox.MAX_AGE);
+                    startFood = rand.nextInt(Fox.RABBIT_FOOD_VALUE);
+                }
+                else {
+                    startFood = Fox.RABBIT_FOOD_VALUE;
+                }
+                break;
+            case Species.WOLF:
+                if(randomAge) {
+                    startAge = rand.nextInt(Wolf.MAX_AGE);
+                    startFood = rand.nextInt(Wolf.RABBIT_FOOD_VALUE);
+                }
+                else {
+                    startFood = Wolf.RABBIT_FOOD_VALUE;
+                }
+                break;
+            case Species.DEER:
+                flags[id] |= MALE;
+                startFood = Deer.INITIAL_FOOD_LEVEL;
+                if(randomAge) {
+                    startAge = rand.nextInt(Deer.MAX_AGE);
+                }
+                if(rand.nextDouble() <= Deer.MALE_PROBABILITY) {
+                    flags[id] &= ~MALE;
+                }
+                break;
+            case Species.MOUSE:
+                flags[id] |= MALE;
+                startFood = Mouse.INITIAL_FOOD_LEVEL;
+                if(randomAge) {
+                    startAge = rand.nextInt(Mouse.MAX_AGE);
+                }
+                if(rand.nextDouble() <= Mouse.MALE_PROBABILITY) {
+                    flags[id] &= ~MALE;
+                }
+                break;
+            default:
+                break;
+        }
+        place(id, startAge, startFood);
+        return id;
+    }
+
+    /**
+     * Create an entity with the given characteristics in the given
+     * cell, as when it is restored from a checkpoint. Nothing is
+     * drawn at random.
+     * @param code The species code of the entity.
+     * @param index The index of the cell, which must be free.
+     * @param age The entity's age.
+     * @param foodLevel The entity's food level.
+     * @param male Whether the entity is male.
+     * @param infected Whether the entity is infected.
+     * @return The id of the new entity.
+     */
+    public int restore(byte code, int index, int age, int foodLevel, boolean male, boolean infected)
+    {
+        int id = allocate();
+        species[id] = code;
+        flags[id] = ALIVE;
+        if(male) {
+            flags[id] |= MALE;
+        }
+        if(infected) {
+            flags[id] |= INFECTED;
+        }
+        cell[id] = index;
+        place(id, age, foodLevel);
+        return id;
+    }
+
+    /**
+     * Set the age and food level of a new entity, work out its death
+     * and put it in its cell.
+     */
+    private void place(int id, int age, int foodLevel)
+    {
+        byte code = species[id];
+        ageBase[id] = age;
+        ageClock[id] = clock[code];
+        foodBase[id] = foodLevel;
+        foodClock[id] = clock[code];
+        deathClock[id] = -1;
+        schedule(id);
+        idAt[cell[id]] = id;
+        field.placeSpecies(cell[id], code);
+        Journal journal = field.getJournal();
+        if(journal != null) {
+            journal.born(cell[id], code, (flags[id] & MALE) != 0);
+        }
+        field.addState(cell[id], state(id));
+    }
+
+    /**
+     * Create an entity with a random age in every cell given a species,
+     * in the order of the cells, making room for all of them at once.
+     * @param chosen The species code of each cell, indexed as by
+     *               Field.getIndex; Species.EMPTY for a free cell.
+     */
+    public void spawnAll(byte[] chosen)
+    {
+        int count = 0;
+        for(byte code : chosen) {
+            if(code != Species.EMPTY) {
+                count++;
+            }
+        }
+        if(size + count > species.length) {
+            grow(Math.max(size + count, species.length * 2));
+        }
+        for(int index = 0; index < chosen.length; index++) {
+            if(chosen[index] != Species.EMPTY) {
+                spawn(chosen[index], index, true);
+            }
+        }
+    }
+
+    /**
+     * Run one step: every plant acts, then every animal, each only if
+     * its species acts at this time and weather. The clocks of those
+     * species move on, and the entities whose death falls due are
+     * marked. Entities born during the step first act in the next one.
+     * Dead entities are removed at the end of the step.
+     * @param time The time of the day of the step.
+     * @param weather The weather of the step.
+     */
+    public void step(Time time, Weather weather)
+    {
+        boolean[] acting = new boolean[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            acting[code] = Species.canAct(code, time, weather);
+        }
+        step(acting);
+    }
+
+    /**
+     * Run one step in which the given species act, as step(Time,
+     * Weather) does for the species that can act at a time and weather.
+     * @param acting Which species act, indexed by species code.
+     */
+    public void step(boolean[] acting)
+    {
+        beginStep(acting);
+        if(active[Species.PLANT]) {
+            for(actor = 0; actor < stepCount; actor++) {
+                if(species[actor] == Species.PLANT && (flags[actor] & ALIVE) != 0) {
+                    actPlant(actor);
+                }
+            }
+        }
+        for(actor = 0; actor < stepCount; actor++) {
+            byte code = species[actor];
+            if(active[code] && code != Species.PLANT && (flags[actor] & ALIVE) != 0) {
+                actAnimal(actor, code);
+            }
+        }
+        endStep();
+    }
+
+    /**
+     * Start a step in which the given species act: their clocks move
+     * on and the entities whose death falls due are marked. Between
+     * this and endStep the entities may be changed from outside the
+     * store, as the IntentPipeline does.
+     * @param acting Which species act, indexed by species code.
+     */
+    void beginStep(boolean[] acting)
+    {
+        for(int code = 0; code < Species.COUNT; code++) {
+            active[code] = acting[code];
+            if(active[code]) {
+                clock[code]++;
+                int fired = wheels[code].advance();
+                for(int i = 0; i < fired; i++) {
+                    int held = wheels[code].getFired(i);
+                    // Events are not cancelled, so ignore those of
+                    // entities that have died, and the stale ones.
+                    if(wheels[code].getFiredTag(i) != generation[held]) {
+                        continue;
+                    }
+                    int id = idOf[held];
+                    if((flags[id] & ALIVE) != 0 && deathClock[id] == clock[code]) {
+                        flags[id] |= DUE;
+                    }
+                }
+            }
+        }
+        stepCount = size;
+        actor = 0;
+    }
+
+    /**
+     * End a step: every entity has acted, and the dead are removed.
+     */
+    void endStep()
+    {
+        actor = stepCount;
+        compact();
+    }
+
+    /**
+     * @return The number of entities at the start of the current step.
+     *         Only these act in it.
+     */
+    int getStepCount()
+    {
+        return stepCount;
+    }
+
+    /**
+     * @return true if the species acts in the current step.
+     */
+    boolean isActive(byte code)
+    {
+        return active[code];
+    }
+
+    /**
+     * @return The species code of an entity.
+     */
+    byte getSpecies(int id)
+    {
+        return species[id];
+    }
+
+    /**
+     * @return The index of the cell an entity occupies.
+     */
+    int getCell(int id)
+    {
+        return cell[id];
+    }
+
+    /**
+     * @return The entity in a cell, or -1 if the cell holds none.
+     */
+    int getIdAt(int index)
+    {
+        return idAt[index];
+    }
+
+    /**
+     * @return true if the entity is alive.
+     */
+    boolean isAlive(int id)
+    {
+        return (flags[id] & ALIVE) != 0;
+    }
+
+    /**
+     * @return true if the entity dies at its turn in the current step.
+     */
+    boolean isDue(int id)
+    {
+        return (flags[id] & DUE) != 0;
+    }
+
+    /**
+     * @return true if the entity is male.
+     */
+    boolean isMale(int id)
+    {
+        return (flags[id] & MALE) != 0;
+    }
+
+    /**
+     * @return true if the entity is infected.
+     */
+    boolean isInfected(int id)
+    {
+        return (flags[id] & INFECTED) != 0;
+    }
+
+    /**
+     * Set the food level of an animal that has just eaten, and work
+     * out its death again.
+     * @param id The animal.
+     * @param value The food value of its meal.
+     */
+    void feed(int id, int value)
+    {
+        foodBase[id] = value;
+        foodClock[id] = clock[species[id]];
+        schedule(id);
+    }
+
+    /**
+     * A plant dies if its time has come, and may otherwise seed into
+     * free adjacent cells.
+     * @param id The plant.
+     */
+    private void actPlant(int id)
+    {
+        if((flags[id] & DUE) != 0) {
+            kill(id);
+            return;
+        }
+        Random rand = field.getRandom();
+        int seeds = 0;
+        if(getAge(id) >= Plant.BREEDING_AGE && rand.nextDouble() <= Plant.BREEDING_PROBABILITY) {
+            seeds = rand.nextInt(Plant.MAX_LITTER_SIZE) + 1;
+        }
+        if(seeds > 0) {
+            Surroundings around = surroundings(id);
+            for(int b = 0; b < seeds; b++) {
+                int free = around.takeFree(Species.PLANT);
+                if(free < 0) {
+                    break;
+                }
+                spawn(Species.PLANT, cellOf(around, free), true);
+            }
+        }
+    }
+
+    /**
+     * An animal dies if its time has come of old age or hunger, and
+     * otherwise infects its neighbours if it is infected, may give
+     * birth, and then eats or moves.
+     * @param id The animal.
+     * @param code The animal's species code.
+     */
+    private void actAnimal(int id, byte code)
+    {
+        Random rand = field.getRandom();
+        if((flags[id] & DUE) != 0) {
+            kill(id);
+            return;
+        }
+        boolean infected = (flags[id] & INFECTED) != 0;
+
+        Surroundings around = surroundings(id);
+        if(infected) {
+            for(int i = 0; i < around.size(); i++) {
+                if(Species.isAnimal(around.getSpecies(i))) {
+                    infect(idAt[cellOf(around, i)]);
+                }
+            }
+        }
+
+        int births = 0;
+        if(code == Species.DEER || code == Species.MOUSE) {
+            if(getAge(id) >= breedingAge(code) && (flags[id] & MALE) == 0 && findPartner(id, code, around)) {
+                births = rand.nextInt(maxLitterSize(code)) + 1;
+            }
+        }
+        else if(getAge(id) >= breedingAge(code) && rand.nextDouble() <= breedingProbability(code)) {
+            births = rand.nextInt(maxLitterSize(code)) + 1;
+        }
+        for(int b = 0; b < births; b++) {
+            int free = around.takeFree(code);
+            if(free < 0) {
+                break;
+            }
+            int young = spawn(code, cellOf(around, free), false);
+            if(infected) {
+                infect(young);
+            }
+        }
+
+        int target = -1;
+        for(int i = 0; i < around.size() && target < 0; i++) {
+            int value = foodValue(code, around.getSpecies(i));
+            if(value > 0) {
+                kill(idAt[cellOf(around, i)]);
+                around.setSpecies(i, Species.EMPTY);
+                feed(id, value);
+                target = i;
+            }
+        }
+        if(target < 0) {
+            target = around.takeFree(code);
+        }
+        if(target >= 0) {
+            move(id, cellOf(around, target));
+        }
+        else {
+            // Overcrowding.
+            kill(id);
+        }
+    }
+
+    /**
+     * Infect an entity. Foxes, wolves and rabbits age five times
+     * faster once infected, but no longer die of old age, so their
+     * age is set afresh and their death worked out again.
+     * @param id The animal to infect.
+     */
+    private void infect(int id)
+    {
+        byte code = species[id];
+        infect(id, !active[code] || id < actor || id >= stepCount);
+    }
+
+    /**
+     * Infect an entity, as infect(int) does.
+     * @param id The animal to infect.
+     * @param acted Whether it has already acted in the current step.
+     *              One that is still to act ages at the faster rate
+     *              already in this step.
+     */
+    void infect(int id, boolean acted)
+    {
+        if((flags[id] & INFECTED) != 0) {
+            return;
+        }
+        if((flags[id] & ALIVE) != 0) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.infected(cell[id]);
+            }
+            field.addState(cell[id], StateHash.INFECTED);
+        }
+        byte code = species[id];
+        if(!isHungry(code)) {
+            flags[id] |= INFECTED;
+            return;
+        }
+        int since = acted ? clock[code] : clock[code] - 1;
+        ageBase[id] = ageBase[id] + (since - ageClock[id]);
+        ageClock[id] = since;
+        flags[id] |= INFECTED;
+        flags[id] &= ~DUE;
+        schedule(id);
+        if(deathClock[id] == clock[code] && !acted) {
+            // Starving in this very step.
+            flags[id] |= DUE;
+        }
+    }
+
+    /**
+     * Work out when an entity dies of old age or hunger, and put the
+     * event on its species' wheel if that has changed.
+     * @param id The entity.
+     */
+    private void schedule(int id)
+    {
+        byte code = species[id];
+        int death;
+        if(code == Species.PLANT) {
+            death = ageClock[id] + Plant.MAX_AGE - ageBase[id];
+        }
+        else {
+            death = NEVER;
+            boolean hungry = isHungry(code);
+            if(!hungry || (flags[id] & INFECTED) == 0) {
+                death = ageClock[id] + maxAge(code) - ageBase[id] + 1;
+            }
+            if(hungry) {
+                death = Math.min(death, foodClock[id] + Math.max(foodBase[id], 1));
+            }
+        }
+        if(death != deathClock[id]) {
+            deathClock[id] = death;
+            if(death != NEVER && death > clock[code]) {
+                wheels[code].schedule(handle[id], generation[handle[id]], death);
+            }
+        }
+    }
+
+    /**
+     * Look at the first neighbour of the same species, like
+     * Deer.findPartner and Mouse.findPartner.
+     * @return true if it is of the other gender and they breed.
+     */
+    private boolean findPartner(int id, byte code, Surroundings around)
+    {
+        for(int i = 0; i < around.size(); i++) {
+            if(around.getSpecies(i) == code) {
+                int partner = idAt[cellOf(around, i)];
+                boolean differ = (flags[id] & MALE) != (flags[partner] & MALE);
+                return differ && field.getRandom().nextDouble() <= breedingProbability(code);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Take the snapshot of the neighbourhood of an entity.
+     */
+    private Surroundings surroundings(int id)
+    {
+        int width = field.getWidth();
+        return field.surroundings(cell[id] / width, cell[id] % width);
+    }
+
+    /**
+     * Return the index of the cell of a neighbour in a snapshot.
+     */
+    private int cellOf(Surroundings around, int neighbour)
+    {
+        int position = around.getPosition(neighbour);
+        return field.getIndex(Location.unpackRow(position), Location.unpackCol(position));
+    }
+
+    /**
+     * Move an entity to a free cell.
+     */
+    void move(int id, int index)
+    {
+        Journal journal = field.getJournal();
+        if(journal != null) {
+            journal.moved(cell[id], index);
+        }
+        field.removeState(cell[id], state(id));
+        field.addState(index, state(id));
+        field.clearSpecies(cell[id]);
+        idAt[cell[id]] = NO_ENTITY;
+        cell[id] = index;
+        idAt[index] = id;
+        field.placeSpecies(index, species[id]);
+    }
+
+    /**
+     * Mark an entity as dead and remove it from the field. Its id
+     * is given up at the end of the step.
+     */
+    void kill(int id)
+    {
+        if((flags[id] & ALIVE) != 0) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.died(cell[id]);
+            }
+            field.removeState(cell[id], state(id));
+            flags[id] &= ~ALIVE;
+            field.clearSpecies(cell[id]);
+            idAt[cell[id]] = NO_ENTITY;
+        }
+    }
+
+    /**
+     * @return The state bits of an entity, as given by StateHash.state.
+     */
+    private int state(int id)
+    {
+        return StateHash.state((flags[id] & MALE) != 0, (flags[id] & INFECTED) != 0);
+    }
+
+    /**
+     * Remove the dead entities, moving the survivors down so that
+     * ids stay dense and in order, and give up the handles of the
+     * dead. The survivors keep their handles, so their death events
+     * stand as they are.
+     */
+    private void compact()
+    {
+        int next = 0;
+        for(int id = 0; id < size; id++) {
+            if((flags[id] & ALIVE) != 0) {
+                if(id != next) {
+                    species[next] = species[id];
+                    flags[next] = flags[id];
+                    cell[next] = cell[id];
+                    ageBase[next] = ageBase[id];
+                    ageClock[next] = ageClock[id];
+                    foodBase[next] = foodBase[id];
+                    foodClock[next] = foodClock[id];
+                    deathClock[next] = deathClock[id];
+                    handle[next] = handle[id];
+                    idOf[handle[next]] = next;
+                    idAt[cell[next]] = next;
+                }
+                next++;
+            }
+            else {
+                generation[handle[id]]++;
+                freeHandles[freeCount++] = handle[id];
+            }
+        }
+        size = next;
+    }
+
+    /**
+     * Give out the next id, and a handle for it, making the arrays
+     * larger if needed.
+     */
+    private int allocate()
+    {
+        if(size == species.length) {
+            grow(species.length * 2);
+        }
+        int id = size++;
+        int held = freeCount > 0 ? freeHandles[--freeCount] : handleLimit++;
+        handle[id] = held;
+        idOf[held] = id;
+        return id;
+    }
+
+    /**
+     * Make the arrays larger.
+     * @param capacity The number of entities to make room for.
+     */
+    private void grow(int capacity)
+    {
+        species = Arrays.copyOf(species, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+        ageBase = Arrays.copyOf(ageBase, capacity);
+        ageClock = Arrays.copyOf(ageClock, capacity);
+        foodBase = Arrays.copyOf(foodBase, capacity);
+        foodClock = Arrays.copyOf(foodClock, capacity);
+        deathClock = Arrays.copyOf(deathClock, capacity);
+        // There are never more handles than entities.
+        handle = Arrays.copyOf(handle, capacity);
+        idOf = Arrays.copyOf(idOf, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+    /**
+     * Foxes, wolves and rabbits get hungry, and they are also the
+     * species that age faster while infected.
+     * @return true if animals of the species get hungry.
+     */
+    static boolean isHungry(byte code)
+    {
+        return code == Species.FOX || code == Species.WOLF || code == Species.RABBIT;
+    }
+
+    /**
+     * @return The number of years an entity ages in each step it acts.
+     */
+    private int ageingRate(int id)
+    {
+        if((flags[id] & INFECTED) != 0 && isHungry(species[id])) {
+            return 5;
+        }
+        return 1;
+    }
+
+    /**
+     * The age above which an animal of the species dies.
+     */
+    static int maxAge(byte code)
+    {
+        switch(code) {
+            case Species.RABBIT: return Rabbit.MAX_AGE;
+            case Species.FOX: return Fox.MAX_AGE;
+            case Species.WOLF: return Wolf.MAX_AGE;
+            case Species.DEER: return Deer.MAX_AGE;
+            case Species.MOUSE: return Mouse.MAX_AGE;
+            default: return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The age at which an animal of the species can breed.
+     */
+    static int breedingAge(byte code)
+    {
+        switch(code) {
+            case Species.RABBIT: return Rabbit.BREEDING_AGE;
+            case Species.FOX: return Fox.BREEDING_AGE;
+            case Species.WOLF: return Wolf.BREEDING_AGE;
+            case Species.DEER: return Deer.BREEDING_AGE;
+            case Species.MOUSE: return Mouse.BREEDING_AGE;
+            default: return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The likelihood of an animal of the species breeding.
+     */
+    static double breedingProbability(byte code)
+    {
+        switch(code) {
+            case Species.RABBIT: return Rabbit.BREEDING_PROBABILITY;
+            case Species.FOX: return Fox.BREEDING_PROBABILITY;
+            case Species.WOLF: return Wolf.BREEDING_PROBABILITY;
+            case Species.DEER: return Deer.BREEDING_PROBABILITY;
+            case Species.MOUSE: return Mouse.BREEDING_PROBABILITY;
+            default: return 0;
+        }
+    }
+
+    /**
+     * The maximum litter size of the species.
+     */
+    static int maxLitterSize(byte code)
+    {
+        switch(code) {
+            case Species.RABBIT: return Rabbit.MAX_LITTER_SIZE;
+            case Species.FOX: return Fox.MAX_LITTER_SIZE;
+            case Species.WOLF: return Wolf.MAX_LITTER_SIZE;
+            case Species.DEER: return Deer.MAX_LITTER_SIZE;
+            case Species.MOUSE: return Mouse.MAX_LITTER_SIZE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * The food value of a meal to an animal.
+     * @param eater The species code of the animal.
+     * @param meal The species code of what it finds.
+     * @return The food value, or 0 if the animal does not eat it.
+     */
+    static int foodValue(byte eater, byte meal)
+    {
+        switch(eater) {
+            case Species.FOX:
+                if(meal == Species.MOUSE) return Fox.MOUSE_FOOD_VALUE;
+                if(meal == Species.RABBIT) return Fox.RABBIT_FOOD_VALUE;
+                return 0;
+            case Species.WOLF:
+                if(meal == Species.DEER) return Wolf.DEER_FOOD_VALUE;
+                if(meal == Species.RABBIT) return Wolf.RABBIT_FOOD_VALUE;
+                return 0;
+            case Species.RABBIT:
+                return meal == Species.PLANT ? Rabbit.PLANT_FOOD_VALUE : 0;
+            case Species.DEER:
+                return meal == Species.PLANT ? Deer.PLANT_FOOD_VALUE : 0;
+            case Species.MOUSE:
+                return meal == Species.PLANT ? Mouse.PLANT_FOOD_VALUE : 0;
+            default:
+                return 0;
+        }
+    }
+}
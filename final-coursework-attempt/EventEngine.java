@@ -0,0 +1,149 @@
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Drives the entities of an EntityStore from a queue of timestamped
+ * events rather than visiting every step. Each species with living
+ * members has one event in the queue: the next step in which it can
+ * act, found by looking ahead in a lazily drawn weather schedule.
+ * Processing the events of a step lets those species act, which is
+ * when their members move, eat, breed and infect one another; deaths
+ * of old age and hunger are already events on the store's timing
+ * wheels. Steps in which no species can act are never visited, and
+ * species that die out are dropped from the queue for good.
+ *
+ * The weather is drawn from its own random numbers, so a run is
+ * reproducible for a seed, but does not follow the same course as
+ * a run of a stepped engine with that seed.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class EventEngine
+{
+    /**
+     * The next step in which a species acts.
+     */
+    private static class Activation implements Comparable<Activation>
+    {
+        // The step.
+        private int step;
+        // The species code.
+        private int species;
+
+        /**
+         * Create an activation.
+         * @param step The step.
+         * @param species The species code.
+         */
+        public Activation(int step, int species)
+        {
+            this.step = step;
+            this.species = species;
+        }
+
+        /**
+         * Order activations by step, then by species.
+         */
+        public int compareTo(Activation other)
+        {
+            if(step != other.step) {
+                return Integer.compare(step, other.step);
+            }
+            return Integer.compare(species, other.species);
+        }
+    }
+
+    // The entities driven by the engine.
+    private EntityStore store;
+    // The field they live in.
+    private Field field;
+    // The time of the day and the weather of every step.
+    private WeatherSchedule schedule;
+    // The random number generator of the weather.
+    private Random rand;
+    // The pending activations.
+    private PriorityQueue<Activation> queue;
+    // Which species act in the step being processed.
+    private boolean[] acting;
+    // The last step processed.
+    private int step;
+    // The number of steps in which some species acted.
+    private int busySteps;
+
+    /**
+     * Create an engine driving the given store.
+     * @param store The entities to drive.
+     * @param field The field they live in.
+     * @param rand The random number generator of the weather.
+     */
+    public EventEngine(EntityStore store, Field field, Random rand)
+    {
+        this.store = store;
+        this.field = field;
+        this.rand = rand;
+        queue = new PriorityQueue<>();
+        acting = new boolean[Species.COUNT];
+        reset(0);
+    }
+
+    /**
+     * Start again from the given step, with the entities now in
+     * the store. Every species with members is scheduled.
+     * @param step The current step.
+     */
+    public void reset(int step)
+    {
+        this.step = step;
+        busySteps = 0;
+        schedule = new WeatherSchedule(rand, step);
+        queue.clear();
+        for(int species = 0; species < Species.COUNT; species++) {
+            if(field.getCount(species) > 0) {
+                queue.add(new Activation(schedule.nextActivation(species, step), species));
+            }
+        }
+    }
+
+    /**
+     * Process every event up to and including the given step.
+     * @param target The step to advance to.
+     */
+    public void advanceTo(int target)
+    {
+        while(!queue.isEmpty() && queue.peek().step <= target) {
+            int now = queue.peek().step;
+            for(int species = 0; species < Species.COUNT; species++) {
+                acting[species] = false;
+            }
+            while(!queue.isEmpty() && queue.peek().step == now) {
+                acting[queue.poll().species] = true;
+            }
+            store.step(acting);
+            busySteps++;
+            for(int species = 0; species < Species.COUNT; species++) {
+                // A species that has died out never returns.
+                if(acting[species] && field.getCount(species) > 0) {
+                    queue.add(new Activation(schedule.nextActivation(species, now), species));
+                }
+            }
+            schedule.discardBefore(now);
+        }
+        step = Math.max(step, target);
+    }
+
+    /**
+     * @return The weather of the last step advanced to.
+     */
+    public Weather getWeather()
+    {
+        return schedule.getWeather(step);
+    }
+
+    /**
+     * @return The number of steps in which some species acted.
+     */
+    public int getBusySteps()
+    {
+        return busySteps;
+    }
+}
@@ -1,25 +1,94 @@
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
  * 
+ * A field can either keep its occupants in a two dimensional array
+ * of objects, or in a flat layout: one int handle per cell, which
+ * refers to a table of occupants, plus one species code per cell.
+ * The flat layout lets hot paths inspect cells through the
+ * primitive accessors without touching the occupants themselves.
+ * A flat field whose participants are all kept elsewhere, as in an
+ * EntityStore, can be told to keep no objects: it then holds only
+ * the species codes, and neither handles nor a table of occupants.
+ * 
+ * In both layouts the field keeps a count of the occupants of each
+ * species, updated as they are placed and cleared, and a StateHash
+ * of its contents. It also notes which chunks of CHUNK_SIZE cells,
+ * taken in the order of their indexes, have changed since they were
+ * last taken by takeDirtyChunks, so that a view can redraw only those.
+ * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
+    // The handle stored in an empty cell of a flat field.
+    public static final int NO_HANDLE = 0;
+    // The number of cells, consecutive by index, in a dirty chunk.
+    public static final int CHUNK_SIZE = 64;
+    // The shift from a cell index to its chunk.
+    private static final int CHUNK_SHIFT = 6;
+    // The marks of a clean and a dirty chunk.
+    private static final int CLEAN = 0;
+    private static final int DIRTY = 1;
     
+    // The random number generator of the simulation the field belongs to.
+    // It provides random locations, and is used by the field's occupants.
+    private Random rand;
+    // The random numbers each thread draws from in place of rand while
+    // it runs a tile of the TILES engine, or null.
+    private ThreadLocal<Random> localRandom;
     // The depth and width of the field.
     private int depth, width;
-    // Storage for the animals.
+    // Whether the field uses the flat layout.
+    private boolean flat;
+    // Storage for the animals, when the flat layout is not used.
     private Object[][] field;
+    // The handle of the occupant of each cell, indexed by row * width + col,
+    // or null if the flat layout keeps no objects.
+    private int[] handles;
+    // The species code of the occupant of each cell.
+    private byte[] species;
+    // The occupants, indexed by handle, or null with the handles.
+    // Slot NO_HANDLE is never used.
+    // It grows with the handles given out, under the lock they are
+    // given out under; volatile, so that threads reading it without
+    // the lock see a larger table only once its entries are copied.
+    private volatile Object[] occupants;
+    // Handles released by cleared cells, ready to be reused.
+    private int[] freeHandles;
+    private int freeCount;
+    // The lowest handle that has never been given out.
+    private int nextHandle;
+    // The number of occupants of each species, indexed by species code.
+    // Atomic, so the counts can be read from outside the simulation.
+    private AtomicIntegerArray counts;
+    // The StateHash of the contents of the field. Occupants placed and
+    // cleared are added in by the field; their state by themselves.
+    private LongAdder hash;
+    // The mark of each chunk of cells, set DIRTY when a cell of the
+    // chunk changes, and the dirty chunks in the order they were
+    // marked. Threads stepping parallel tiles may mark the same chunk
+    // at once, so a mark is set by compare-and-set, and only the
+    // thread that sets it lists the chunk.
+    private AtomicIntegerArray dirty;
+    private int[] dirtyChunks;
+    private AtomicInteger dirtyCount;
+    // The cursor handed out by neighbours, one per thread, so that
+    // disjoint parts of the field can be stepped in parallel.
+    private ThreadLocal<Neighbourhood> neighbourhood;
+    // The snapshot handed out by surroundings, one per thread.
+    private ThreadLocal<Surroundings> surroundings;
+    // Where the occupants record their changes, or null.
+    private Journal journal;
 
     /**
      * Represent a field of the given dimensions.
@@ -28,9 +97,95 @@ public class Field
      */
     public Field(int depth, int width)
     {
+        this(depth, width, false);
+    }
+    
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param flat Whether to store the occupants in the flat layout.
+     */
+    public Field(int depth, int width, boolean flat)
+    {
+        this(depth, width, flat, Randomizer.getRandom());
+    }
+    
+    /**
+     * Represent a field of the given dimensions, belonging to a
+     * simulation with its own random number generator.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param flat Whether to store the occupants in the flat layout.
+     * @param rand The random number generator of the simulation.
+     * @throws IllegalArgumentException If the field is deeper or wider
+     *         than Location.MAX_PACKED_SIZE, or has too many cells
+     *         to index with an int.
+     */
+    public Field(int depth, int width, boolean flat, Random rand)
+    {
+        if(depth > Location.MAX_PACKED_SIZE || width > Location.MAX_PACKED_SIZE) {
+            throw new IllegalArgumentException("A field can be at most " + Location.MAX_PACKED_SIZE +
+                                               " cells deep and wide, not " + depth + "x" + width);
+        }
+        if((long) depth * width >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A " + depth + "x" + width + " field has too many cells");
+        }
+        this.rand = rand;
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        this.flat = flat;
+        localRandom = new ThreadLocal<>();
+        neighbourhood = ThreadLocal.withInitial(() -> new Neighbourhood(this));
+        surroundings = ThreadLocal.withInitial(Surroundings::new);
+        counts = new AtomicIntegerArray(Species.COUNT);
+        hash = new LongAdder();
+        dirty = new AtomicIntegerArray(getChunkCount());
+        dirtyChunks = new int[getChunkCount()];
+        dirtyCount = new AtomicInteger();
+        markAllDirty();
+        if(flat) {
+            species = new byte[depth * width];
+            setObjectsKept(true);
+        }
+        else {
+            field = new Object[depth][width];
+        }
+    }
+    
+    /**
+     * Choose whether the flat layout keeps occupant objects, with a
+     * handle per cell and a table of occupants. A field made flat
+     * keeps them until told otherwise. Objects placed before they
+     * stop being kept are forgotten, so this should be called on a
+     * field about to be cleared.
+     * @param kept Whether occupant objects may be placed.
+     */
+    public void setObjectsKept(boolean kept)
+    {
+        assert flat : "Only the flat layout can do without objects";
+        if(kept && handles == null) {
+            handles = new int[depth * width];
+            occupants = new Object[64];
+            freeHandles = new int[64];
+            freeCount = 0;
+            nextHandle = NO_HANDLE + 1;
+        }
+        else if(!kept) {
+            handles = null;
+            occupants = null;
+            freeHandles = null;
+        }
+    }
+    
+    /**
+     * @return true if the field can hold occupant objects: always in
+     *         the two dimensional layout, and in the flat layout
+     *         unless told to keep none.
+     */
+    public boolean areObjectsKept()
+    {
+        return !flat || handles != null;
     }
     
     /**
@@ -38,11 +193,27 @@ public class Field
      */
     public void clear()
     {
-        for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
+        if(flat) {
+            Arrays.fill(species, Species.EMPTY);
+            if(handles != null) {
+                Arrays.fill(handles, NO_HANDLE);
+                Arrays.fill(occupants, null);
+                freeCount = 0;
+                nextHandle = NO_HANDLE + 1;
+            }
+        }
+        else {
+            for(int row = 0; row < depth; row++) {
+                for(int col = 0; col < width; col++) {
+                    field[row][col] = null;
+                }
             }
         }
+        for(int i = 0; i < Species.COUNT; i++) {
+            counts.set(i, 0);
+        }
+        hash.reset();
+        markAllDirty();
     }
     
     /**
@@ -51,7 +222,12 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        if(flat) {
+            clearCell(getIndex(location.getRow(), location.getCol()));
+        }
+        else {
+            setLegacy(null, location.getRow(), location.getCol());
+        }
     }
     
     /**
@@ -64,7 +240,12 @@ public class Field
      */
     public void place(Object animal, int row, int col)
     {
-        place(animal, new Location(row, col));
+        if(flat) {
+            placeCell(animal, getIndex(row, col));
+        }
+        else {
+            place(animal, new Location(row, col));
+        }
     }
     
     /**
@@ -76,7 +257,124 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        if(flat) {
+            placeCell(animal, getIndex(location.getRow(), location.getCol()));
+        }
+        else {
+            setLegacy(animal, location.getRow(), location.getCol());
+        }
+    }
+    
+    /**
+     * Return the number of occupants of a species in the field.
+     * This is kept up to date as occupants are placed and cleared,
+     * and may be called from any thread.
+     * @param species The species code.
+     * @return How many occupants of that species the field holds.
+     */
+    public int getCount(int species)
+    {
+        return counts.get(species);
+    }
+    
+    /**
+     * Copy the species codes of a run of cells.
+     * @param into Where to copy the codes, indexed as by getIndex;
+     *             at least end long.
+     * @param first The index of the first cell.
+     * @param end The index after the last cell.
+     */
+    public void copySpecies(byte[] into, int first, int end)
+    {
+        if(flat) {
+            System.arraycopy(species, first, into, first, end - first);
+        }
+        else {
+            for(int index = first; index < end; index++) {
+                into[index] = getSpeciesAt(index);
+            }
+        }
+    }
+    
+    /**
+     * Return the number of dirty chunks the field is divided into.
+     * @return The number of chunks.
+     */
+    public int getChunkCount()
+    {
+        return (depth * width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+    
+    /**
+     * Take the chunks of cells that have changed since they were last
+     * taken, or since the field was made or emptied, marking them
+     * clean. Chunk c holds the cells with indexes from c * CHUNK_SIZE
+     * up to, but not including, (c + 1) * CHUNK_SIZE. The field should
+     * have a single taker, such as its view, which takes the chunks
+     * between steps on the thread running the simulation. Only the
+     * chunks changed are looked at, not the whole field.
+     * @param chunks Where to put the chunks taken, in the order they
+     *               first changed; at least getChunkCount long.
+     * @return The number of chunks taken.
+     */
+    public int takeDirtyChunks(int[] chunks)
+    {
+        int count = dirtyCount.get();
+        for(int i = 0; i < count; i++) {
+            int chunk = dirtyChunks[i];
+            dirty.set(chunk, CLEAN);
+            chunks[i] = chunk;
+        }
+        dirtyCount.set(0);
+        return count;
+    }
+    
+    /**
+     * Return the StateHash of the contents of the field: the species
+     * of every occupant, and whether it is male and infected. It is
+     * kept up to date as occupants are placed and cleared, and as
+     * they add and remove their state.
+     * @return The hash.
+     */
+    public long getHash()
+    {
+        return hash.sum();
+    }
+    
+    /**
+     * Replace the hash of the contents of the field, as when it has
+     * been worked out from scratch.
+     * @param value The hash.
+     */
+    public void setHash(long value)
+    {
+        hash.reset();
+        hash.add(value);
+    }
+    
+    /**
+     * Add the state of the occupant of a cell to the hash.
+     * @param index The cell index, as given by getIndex.
+     * @param state The state bits, as given by StateHash.state.
+     */
+    public void addState(int index, int state)
+    {
+        if(state != 0) {
+            hash.add(StateHash.stateKey(index, state));
+        }
+    }
+    
+    /**
+     * Take the state of the occupant of a cell out of the hash, as
+     * when it moves away or dies.
+     * @param index The cell index, as given by getIndex.
+     * @param state The state bits, as given by StateHash.state.
+     */
+    public void removeState(int index, int state)
+    {
+        if(state != 0) {
+            hash.add(-StateHash.stateKey(index, state));
+        }
     }
     
     /**
@@ -97,7 +395,115 @@ public class Field
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        if(flat) {
+            return handles == null ? null : occupants[handles[getIndex(row, col)]];
+        }
+        else {
+            return field[row][col];
+        }
+    }
+    
+    /**
+     * Return the species code of whatever occupies the given cell.
+     * This is cheap in the flat layout, as no occupant is loaded.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species code, Species.EMPTY if the cell is free.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        if(flat) {
+            return species[getIndex(row, col)];
+        }
+        else {
+            return Species.of(field[row][col]);
+        }
+    }
+    
+    /**
+     * Return the species code of whatever occupies the given cell.
+     * @param index The cell index, as given by getIndex.
+     * @return The species code, Species.EMPTY if the cell is free.
+     */
+    public byte getSpeciesAt(int index)
+    {
+        if(flat) {
+            return species[index];
+        }
+        else {
+            return Species.of(field[index / width][index % width]);
+        }
+    }
+    
+    /**
+     * Return the handle of the occupant of the given cell.
+     * Handles are only kept by a field using the flat layout.
+     * @param index The cell index, as given by getIndex.
+     * @return The handle, or NO_HANDLE if the cell is free.
+     */
+    public int getHandleAt(int index)
+    {
+        assert handles != null : "Handles are only kept in the flat layout, with objects";
+        return handles[index];
+    }
+    
+    /**
+     * Mark a cell of the flat layout as occupied by a participant
+     * of the given species that is not stored as an object, such as
+     * one kept in an EntityStore. getObjectAt returns null for the
+     * cell, while its species code and the counts are kept as usual.
+     * @param index The cell index, as given by getIndex.
+     * @param code The species code of the participant.
+     */
+    public void placeSpecies(int index, byte code)
+    {
+        assert flat : "Species can only be placed in the flat layout";
+        clearCell(index);
+        species[index] = code;
+        counts.incrementAndGet(code);
+        hash.add(StateHash.key(index, code));
+        markDirty(index);
+    }
+    
+    /**
+     * Empty a cell of the flat layout, whatever occupies it.
+     * @param index The cell index, as given by getIndex.
+     */
+    public void clearSpecies(int index)
+    {
+        assert flat : "Species can only be cleared in the flat layout";
+        clearCell(index);
+    }
+    
+    /**
+     * Return the occupant referred to by a handle.
+     * @param handle A handle obtained from getHandleAt.
+     * @return The occupant, or null for NO_HANDLE.
+     */
+    public Object getOccupant(int handle)
+    {
+        assert handles != null : "Handles are only kept in the flat layout, with objects";
+        return occupants[handle];
+    }
+    
+    /**
+     * Return the index of a cell in the flat layout.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The index of the cell, row * width + col.
+     */
+    public int getIndex(int row, int col)
+    {
+        return row * width + col;
+    }
+    
+    /**
+     * Check whether the field uses the flat layout.
+     * @return true if the occupants are stored as handles.
+     */
+    public boolean isFlat()
+    {
+        return flat;
     }
     
     /**
@@ -110,8 +516,9 @@ public class Field
      */
     public Location randomAdjacentLocation(Location location)
     {
-        List<Location> adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        Neighbourhood adjacent = neighbours(location);
+        int next = adjacent.next();
+        return new Location(Location.unpackRow(next), Location.unpackCol(next));
     }
     
     /**
@@ -122,10 +529,13 @@ public class Field
     public List<Location> getFreeAdjacentLocations(Location location)
     {
         List<Location> free = new LinkedList<>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
+        Neighbourhood adjacent = neighbours(location);
+        while(adjacent.hasNext()) {
+            int next = adjacent.next();
+            int row = Location.unpackRow(next);
+            int col = Location.unpackCol(next);
+            if(getSpeciesAt(row, col) == Species.EMPTY) {
+                free.add(new Location(row, col));
             }
         }
         return free;
@@ -141,14 +551,16 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
-        }
-        else {
-            return null;
+        Neighbourhood adjacent = neighbours(location);
+        while(adjacent.hasNext()) {
+            int next = adjacent.next();
+            int row = Location.unpackRow(next);
+            int col = Location.unpackCol(next);
+            if(getSpeciesAt(row, col) == Species.EMPTY) {
+                return new Location(row, col);
+            }
         }
+        return null;
     }
 
     /**
@@ -164,27 +576,120 @@ public class Field
         // The list of locations to be returned.
         List<Location> locations = new LinkedList<>();
         if(location != null) {
-            int row = location.getRow();
-            int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
-                }
+            // The cursor produces the locations in a random order.
+            // Several other methods rely on the list being in a
+            // random order.
+            Neighbourhood adjacent = neighbours(location);
+            while(adjacent.hasNext()) {
+                int next = adjacent.next();
+                locations.add(new Location(Location.unpackRow(next), Location.unpackCol(next)));
             }
-            
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
         }
         return locations;
     }
+    
+    /**
+     * Return the cursor over the neighbours of the given location,
+     * positioned on the first neighbour of a random ordering.
+     * The cursor belongs to the field and is reset by the next call
+     * from the same thread, so it must not be held across calls. Producing neighbours this
+     * way creates no objects.
+     * @param location The location whose neighbours are wanted.
+     * @return The field's neighbourhood cursor.
+     */
+    public Neighbourhood neighbours(Location location)
+    {
+        Neighbourhood cursor = neighbourhood.get();
+        cursor.reset(location);
+        return cursor;
+    }
+
+    /**
+     * Take a snapshot of the neighbours of the given location, in
+     * a random order. Like the cursor, the snapshot belongs to the
+     * field and is overwritten by the next call.
+     * @param location The location whose neighbours are wanted.
+     * @return The field's snapshot of that neighbourhood.
+     */
+    public Surroundings surroundings(Location location)
+    {
+        return surroundings(location.getRow(), location.getCol());
+    }
+    
+    /**
+     * Take a snapshot of the neighbours of the given cell, in a
+     * random order. The snapshot is overwritten by the next call
+     * from the same thread.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The field's snapshot of that neighbourhood.
+     */
+    public Surroundings surroundings(int row, int col)
+    {
+        Surroundings snapshot = surroundings.get();
+        snapshot.scan(this, neighbourhood.get(), row, col);
+        return snapshot;
+    }
+
+    /**
+     * Take a snapshot of the neighbours of the given cell, in the
+     * given order rather than a random one. The snapshot is
+     * overwritten by the next call from the same thread.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param permutation Which ordering of the neighbours to use,
+     *                    below Neighbourhood.PERMUTATION_COUNT.
+     * @return The field's snapshot of that neighbourhood.
+     */
+    public Surroundings surroundings(int row, int col, int permutation)
+    {
+        Surroundings snapshot = surroundings.get();
+        snapshot.scan(this, neighbourhood.get(), row, col, permutation);
+        return snapshot;
+    }
+
+    /**
+     * Return the random number generator of the simulation the
+     * field belongs to, or the one set for the calling thread.
+     * @return The random number generator.
+     */
+    public Random getRandom()
+    {
+        Random local = localRandom.get();
+        return local != null ? local : rand;
+    }
+
+    /**
+     * Set the random numbers the calling thread draws from in place of
+     * those of the simulation, so that threads acting at the same time
+     * each draw their own numbers, in an order that does not depend on
+     * how the threads are scheduled.
+     * @param local The random numbers, or null to draw from those of
+     *              the simulation again.
+     */
+    public void setLocalRandom(Random local)
+    {
+        localRandom.set(local);
+    }
+
+    /**
+     * Return the journal the occupants of the field record their
+     * births, deaths, moves and infections in.
+     * @return The journal, or null if changes are not recorded.
+     */
+    public Journal getJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * Set the journal the occupants of the field record their changes in.
+     * @param journal The journal, or null to stop recording changes.
+     */
+    public void setJournal(Journal journal)
+    {
+        this.journal = journal;
+    }
 
     /**
      * Return the depth of the field.
@@ -203,4 +708,135 @@ public class Field
     {
         return width;
     }
+    
+    /**
+     * Store an occupant in a cell of the flat layout, releasing the
+     * handle of any previous occupant.
+     * @param occupant The object to store, null to clear the cell.
+     * @param index The cell index.
+     */
+    private void placeCell(Object occupant, int index)
+    {
+        if(handles == null) {
+            throw new IllegalStateException("The field keeps no occupant objects");
+        }
+        clearCell(index);
+        if(occupant != null) {
+            int handle = allocateHandle(occupant);
+            handles[index] = handle;
+            byte code = Species.of(occupant);
+            species[index] = code;
+            counts.incrementAndGet(code);
+            hash.add(StateHash.key(index, code));
+            markDirty(index);
+        }
+    }
+    
+    /**
+     * Empty a cell of the flat layout.
+     * @param index The cell index.
+     */
+    private void clearCell(int index)
+    {
+        byte previous = species[index];
+        if(previous != Species.EMPTY) {
+            int handle = handles == null ? NO_HANDLE : handles[index];
+            if(handle != NO_HANDLE) {
+                releaseHandle(handle);
+                handles[index] = NO_HANDLE;
+            }
+            species[index] = Species.EMPTY;
+            counts.decrementAndGet(previous);
+            hash.add(-StateHash.key(index, previous));
+            markDirty(index);
+        }
+    }
+    
+    /**
+     * Store an occupant in a cell of the two dimensional layout,
+     * keeping the species counts up to date.
+     * @param occupant The object to store, null to clear the cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    private void setLegacy(Object occupant, int row, int col)
+    {
+        Object previous = field[row][col];
+        if(previous != occupant) {
+            markDirty(getIndex(row, col));
+        }
+        if(previous != null) {
+            byte code = Species.of(previous);
+            counts.decrementAndGet(code);
+            hash.add(-StateHash.key(getIndex(row, col), code));
+        }
+        field[row][col] = occupant;
+        if(occupant != null) {
+            byte code = Species.of(occupant);
+            counts.incrementAndGet(code);
+            hash.add(StateHash.key(getIndex(row, col), code));
+        }
+    }
+    
+    /**
+     * Note that a cell has changed.
+     * @param index The cell index.
+     */
+    private void markDirty(int index)
+    {
+        int chunk = index >>> CHUNK_SHIFT;
+        if(dirty.get(chunk) == CLEAN && dirty.compareAndSet(chunk, CLEAN, DIRTY)) {
+            dirtyChunks[dirtyCount.getAndIncrement()] = chunk;
+        }
+    }
+    
+    /**
+     * Note that every cell has changed.
+     */
+    private void markAllDirty()
+    {
+        for(int chunk = 0; chunk < dirty.length(); chunk++) {
+            if(dirty.get(chunk) == CLEAN) {
+                dirty.set(chunk, DIRTY);
+                dirtyChunks[dirtyCount.getAndIncrement()] = chunk;
+            }
+        }
+    }
+    
+    /**
+     * Take a handle from the free list, or a new one if none is free,
+     * and make it refer to the given occupant. Handles are shared by
+     * the whole field, so they are handed out one thread at a time.
+     * @param occupant The occupant the handle refers to.
+     * @return The handle.
+     */
+    private synchronized int allocateHandle(Object occupant)
+    {
+        int handle;
+        if(freeCount > 0) {
+            freeCount--;
+            handle = freeHandles[freeCount];
+        }
+        else {
+            if(nextHandle == occupants.length) {
+                occupants = Arrays.copyOf(occupants, occupants.length * 2);
+            }
+            handle = nextHandle++;
+        }
+        occupants[handle] = occupant;
+        return handle;
+    }
+    
+    /**
+     * Return a handle to the free list.
+     * @param handle The handle that is no longer used.
+     */
+    private synchronized void releaseHandle(int handle)
+    {
+        occupants[handle] = null;
+        if(freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandles.length * 2);
+        }
+        freeHandles[freeCount++] = handle;
+    }
 }
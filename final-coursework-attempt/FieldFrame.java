@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A picture of the state of a simulation at one step, as the view
+ * shows it: the species of every cell, the chunks of cells that
+ * changed since the frame shown before, and the text of the labels.
+ * A frame is filled in by the thread running the simulation and then
+ * handed over whole to the thread painting the view, which only reads
+ * it; it is not changed again until it has been handed back.
+ *
+ * Frames are reused rather than made afresh for every step. Frames
+ * made for the same field share a group: when one is filled in, the
+ * chunks it takes are noted on the others, so that a frame filled in
+ * again copies only the chunks changed since it was last filled in,
+ * not the whole field. Only a new frame copies every cell.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class FieldFrame
+{
+    // The step, and the text of the labels.
+    private int step;
+    private String time, weather, population;
+    // The species code of each cell, indexed as by Field.getIndex.
+    private byte[] species;
+    // The chunks of cells changed, as given by Field.takeDirtyChunks,
+    // and whether each chunk is among them.
+    private int[] chunks;
+    private int chunkCount;
+    private boolean[] changed;
+    // The chunks changed since the frame was last filled in, by the
+    // frames of its group filled in since, and whether each chunk is
+    // among them. Only the thread filling in frames uses these.
+    private int[] missed;
+    private int missedCount;
+    private boolean[] isMissed;
+    // Whether the frame has been filled in.
+    private boolean filled;
+    // The frames of the group, this one among them.
+    private List<FieldFrame> group;
+
+    /**
+     * Create a frame for a field of the given size, in a group of its own.
+     * @param field The field.
+     */
+    public FieldFrame(Field field)
+    {
+        species = new byte[field.getDepth() * field.getWidth()];
+        chunks = new int[field.getChunkCount()];
+        changed = new boolean[chunks.length];
+        missed = new int[chunks.length];
+        isMissed = new boolean[chunks.length];
+        group = new ArrayList<>();
+        group.add(this);
+    }
+
+    /**
+     * Create a frame in the same group as another, filled in from
+     * the same field.
+     * @param sibling A frame of the group.
+     */
+    public FieldFrame(FieldFrame sibling)
+    {
+        species = new byte[sibling.species.length];
+        chunks = new int[sibling.chunks.length];
+        changed = new boolean[chunks.length];
+        missed = new int[chunks.length];
+        isMissed = new boolean[chunks.length];
+        group = sibling.group;
+        group.add(this);
+    }
+
+    /**
+     * Fill the frame in with the current state of a field, taking
+     * the chunks it has noted as changed. Anything held before is
+     * forgotten. Only the chunks changed since the frame was last
+     * filled in are copied, so the frames of a group must all be
+     * filled in from the field, on one thread, and nothing else may
+     * take its chunks.
+     * @param step The step.
+     * @param field The field, of the size the frame was made for.
+     * @param time The time of the day.
+     * @param weather The weather.
+     * @param population The population details.
+     */
+    public void capture(int step, Field field, String time, String weather, String population)
+    {
+        this.step = step;
+        this.time = time;
+        this.weather = weather;
+        this.population = population;
+        for(int i = 0; i < chunkCount; i++) {
+            changed[chunks[i]] = false;
+        }
+        chunkCount = field.takeDirtyChunks(chunks);
+        for(int i = 0; i < chunkCount; i++) {
+            changed[chunks[i]] = true;
+        }
+        if(!filled) {
+            field.copySpecies(species, 0, species.length);
+            filled = true;
+        }
+        else {
+            for(int i = 0; i < missedCount; i++) {
+                copyChunk(field, missed[i]);
+                isMissed[missed[i]] = false;
+            }
+            missedCount = 0;
+            for(int i = 0; i < chunkCount; i++) {
+                copyChunk(field, chunks[i]);
+            }
+        }
+        for(FieldFrame other : group) {
+            if(other != this) {
+                other.miss(chunks, chunkCount);
+            }
+        }
+    }
+
+    /**
+     * Note chunks changed since the frame was last filled in.
+     * @param changedChunks The chunks.
+     * @param count The number of chunks.
+     */
+    private void miss(int[] changedChunks, int count)
+    {
+        for(int i = 0; i < count; i++) {
+            int chunk = changedChunks[i];
+            if(!isMissed[chunk]) {
+                isMissed[chunk] = true;
+                missed[missedCount++] = chunk;
+            }
+        }
+    }
+
+    /**
+     * Copy the species codes of the cells of a chunk.
+     * @param field The field.
+     * @param chunk The chunk.
+     */
+    private void copyChunk(Field field, int chunk)
+    {
+        int first = chunk * Field.CHUNK_SIZE;
+        field.copySpecies(species, first, Math.min(first + Field.CHUNK_SIZE, species.length));
+    }
+
+    /**
+     * Add the chunks changed in an earlier frame that was never shown
+     * to those of this one, so that they are drawn when it is.
+     * @param earlier The frame that was not shown.
+     */
+    public void merge(FieldFrame earlier)
+    {
+        for(int i = 0; i < earlier.chunkCount; i++) {
+            int chunk = earlier.chunks[i];
+            if(!changed[chunk]) {
+                changed[chunk] = true;
+                chunks[chunkCount++] = chunk;
+            }
+        }
+    }
+
+    /**
+     * @return The step.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The time of the day.
+     */
+    public String getTime()
+    {
+        return time;
+    }
+
+    /**
+     * @return The weather.
+     */
+    public String getWeather()
+    {
+        return weather;
+    }
+
+    /**
+     * @return The population details.
+     */
+    public String getPopulation()
+    {
+        return population;
+    }
+
+    /**
+     * @param index The cell index, as given by Field.getIndex.
+     * @return The species code of the occupant of the cell.
+     */
+    public byte getSpeciesAt(int index)
+    {
+        return species[index];
+    }
+
+    /**
+     * @return The number of chunks of cells changed.
+     */
+    public int getChunkCount()
+    {
+        return chunkCount;
+    }
+
+    /**
+     * @param i Which of the chunks changed, from 0 to getChunkCount() - 1.
+     * @return The chunk, as given by Field.takeDirtyChunks.
+     */
+    public int getChunk(int i)
+    {
+        return chunks[i];
+    }
+}
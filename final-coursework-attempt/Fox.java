@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 /**
@@ -13,17 +12,17 @@ public class Fox extends Animal
     // Characteristics shared by all foxes (class variables).
 
     // The age at which a fox can start to breed.
-    private static final int BREEDING_AGE = 15;
+    static final int BREEDING_AGE = 15;
     // The age to which a fox can live.
-    private static final int MAX_AGE = 100;
+    static final int MAX_AGE = 100;
     // The likelihood of a fox breeding.
-    private static final double BREEDING_PROBABILITY = 0.05;
+    static final double BREEDING_PROBABILITY = 0.05;
     // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 2;
+    static final int MAX_LITTER_SIZE = 2;
     // The food value of a single rabbit.
-    private static final int RABBIT_FOOD_VALUE = 9;
+    static final int RABBIT_FOOD_VALUE = 9;
     // The food value of a single mouse.
-    private static final int MOUSE_FOOD_VALUE = 9;
+    static final int MOUSE_FOOD_VALUE = 9;
 
 
     // Individual characteristics (instance fields).
@@ -44,13 +43,25 @@ public class Fox extends Animal
     {
         super(field, location);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(RABBIT_FOOD_VALUE);
+            age = getRandom().nextInt(MAX_AGE);
+            foodLevel = getRandom().nextInt(RABBIT_FOOD_VALUE);
         }
         else {
             age = 0;
             foodLevel = RABBIT_FOOD_VALUE;
         }
+        recordBirth();
+    }
+
+    /**
+     * Foxes only act during sunny or rainy days.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     * @return true if foxes act at the given time and weather.
+     */
+    static boolean canAct(Time time, Weather weather)
+    {
+        return time.isDay() && (weather.isSunny() || weather.isRainy());
     }
 
     /** 
@@ -64,18 +75,20 @@ public class Fox extends Animal
     public void act(List<Animal> newFoxes, Time time, Weather weather)
     {
         // Foxes only act during sunny or rainy days.
-        if (time.isDay() && (weather.isSunny() || weather.isRainy())){
+        if (canAct(time, weather)){
             incrementAge();
             incrementHunger();
-            // They infect in case they are infected
-            if(isAlive() && isInfected()) infect();
             if(isAlive()) {
-                giveBirth(newFoxes);            
+                // Every step of the act works from one look at the neighbours.
+                Surroundings around = lookAround();
+                // They infect in case they are infected
+                if(isInfected()) infect(around);
+                giveBirth(newFoxes, around);            
                 // Move towards a source of food if found.
-                Location newLocation = findFood();
+                Location newLocation = findFood(around);
                 if(newLocation == null) { 
                     // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
+                    newLocation = around.takeFreeLocation(Species.FOX);
                 }
                 // See if it was possible to move.
                 if(newLocation != null) {
@@ -119,30 +132,29 @@ public class Fox extends Animal
     /**
      * Look for rabbits and mice adjacent to the current location.
      * Only the first live rabbit or mouse is eaten.
+     * @param around The snapshot of the fox's neighbourhood.
      * @return Where food was found, or null if it wasn't.
      */
-    private Location findFood()
+    private Location findFood(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Mouse) {
-                Mouse mouse = (Mouse) animal;
+        for(int i = 0; i < around.size(); i++) {
+            byte species = around.getSpecies(i);
+            if(species == Species.MOUSE) {
+                Mouse mouse = (Mouse) around.getOccupant(i);
                 if(mouse.isAlive()) { 
                     mouse.setDead();
+                    around.setSpecies(i, Species.EMPTY);
                     foodLevel = MOUSE_FOOD_VALUE;
-                    return where;
+                    return around.getLocation(i);
                 }
             }
-            if(animal instanceof Rabbit) {
-                Rabbit rabbit = (Rabbit) animal;
+            else if(species == Species.RABBIT) {
+                Rabbit rabbit = (Rabbit) around.getOccupant(i);
                 if(rabbit.isAlive()) { 
                     rabbit.setDead();
+                    around.setSpecies(i, Species.EMPTY);
                     foodLevel = RABBIT_FOOD_VALUE;
-                    return where;
+                    return around.getLocation(i);
                 }
             }
         }
@@ -153,16 +165,18 @@ public class Fox extends Animal
      * Check whether or not this fox is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newFoxes A list to return newly born foxes.
+     * @param around The snapshot of the fox's neighbourhood.
      */
-    private void giveBirth(List<Animal> newFoxes)
+    private void giveBirth(List<Animal> newFoxes, Surroundings around)
     {
-        // New foxes are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New foxes are born into free adjacent locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
+        for(int b = 0; b < births; b++) {
+            Location loc = around.takeFreeLocation(Species.FOX);
+            if(loc == null) {
+                break;
+            }
             Fox young = new Fox(false, field, loc);
             newFoxes.add(young);
             if (infected) {
@@ -179,8 +193,8 @@ public class Fox extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && getRandom().nextDouble() <= BREEDING_PROBABILITY) {
+            births = getRandom().nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -193,4 +207,32 @@ public class Fox extends Animal
     {
         return age >= BREEDING_AGE;
     }
+
+    /**
+     * @return The fox's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * @return The fox's food level.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Set the fox's age and food level.
+     * @param age The age.
+     * @param foodLevel The food level.
+     * @param male Ignored, as foxes have no gender.
+     */
+    void restore(int age, int foodLevel, boolean male)
+    {
+        this.age = age;
+        this.foodLevel = foodLevel;
+    }
 }
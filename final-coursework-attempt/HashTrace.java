@@ -0,0 +1,205 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The StateHash of a field at each step of a run, either recorded to
+ * a file as a reference, or compared against a reference recorded
+ * before. Comparing tells whether a run still follows the same path
+ * as the reference, as it should after a change meant only to make
+ * the simulation faster, and if not, the first step where it left it.
+ *
+ * The file is laid out, big-endian, as:
+ *
+ *     int    MAGIC
+ *     short  VERSION
+ *     int    the first step recorded
+ *
+ * followed by the hash of each step from the first, as a long.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class HashTrace implements Closeable
+{
+    /**
+     * What a trace does with the hashes it is given.
+     */
+    public enum Mode
+    {
+        // Write them to the file.
+        RECORD,
+        // Compare them with those in the file.
+        VERIFY
+    }
+
+    // The first bytes of every trace: "SIMH".
+    static final int MAGIC = 0x53494D48;
+    // The version of the format written.
+    static final short VERSION = 1;
+    // The size of the header, in bytes.
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+    // The size of the buffer between the hashes and the channel.
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The step of a trace that has not diverged.
+    public static final int NONE = -1;
+
+    // What the trace does.
+    private Mode mode;
+    // The file.
+    private FileChannel channel;
+    // The hashes not yet written, when recording.
+    private ByteBuffer buffer;
+    // The reference, when verifying.
+    private ByteBuffer reference;
+    // The first step in the file, or NONE if nothing is recorded yet.
+    private int firstStep;
+    // The next step expected, or NONE before the first.
+    private int nextStep;
+    // The number of steps compared, and the first that differed.
+    private int checked;
+    private int divergentStep;
+    private long expected, actual;
+
+    /**
+     * Open a trace.
+     * @param path The file to record to, or the reference to compare with.
+     * @param mode What to do with the hashes.
+     * @throws IOException If the file cannot be created or read, or
+     *                     is not a trace.
+     */
+    public HashTrace(Path path, Mode mode) throws IOException
+    {
+        this.mode = mode;
+        divergentStep = NONE;
+        firstStep = NONE;
+        nextStep = NONE;
+        if(mode == Mode.RECORD) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            return;
+        }
+        try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            reference = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        if(reference.remaining() < HEADER_SIZE || reference.getInt() != MAGIC) {
+            throw new IOException("Not a hash trace: " + path);
+        }
+        short version = reference.getShort();
+        if(version != VERSION) {
+            throw new IOException("Unsupported hash trace version " + version);
+        }
+        firstStep = reference.getInt();
+    }
+
+    /**
+     * Record or compare the hash of a step. Steps must be given in
+     * order, one after the other. When verifying, steps outside the
+     * reference are not compared.
+     * @param step The step.
+     * @param hash The hash of the field at the end of the step.
+     * @throws IOException If the hash cannot be recorded.
+     */
+    public void step(int step, long hash) throws IOException
+    {
+        if(nextStep != NONE && step != nextStep) {
+            throw new IllegalArgumentException("Expected step " + nextStep + ", not step " + step);
+        }
+        nextStep = step + 1;
+        if(mode == Mode.RECORD) {
+            if(firstStep == NONE) {
+                firstStep = step;
+                buffer.putInt(MAGIC);
+                buffer.putShort(VERSION);
+                buffer.putInt(step);
+            }
+            if(buffer.remaining() < Long.BYTES) {
+                flush();
+            }
+            buffer.putLong(hash);
+            return;
+        }
+        int position = HEADER_SIZE + (step - firstStep) * Long.BYTES;
+        if(step < firstStep || position + Long.BYTES > reference.limit()) {
+            return;
+        }
+        checked++;
+        long recorded = reference.getLong(position);
+        if(recorded != hash && divergentStep == NONE) {
+            divergentStep = step;
+            expected = recorded;
+            actual = hash;
+        }
+    }
+
+    /**
+     * @return What the trace does.
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * @return The number of steps compared with the reference.
+     */
+    public int getCheckedSteps()
+    {
+        return checked;
+    }
+
+    /**
+     * @return The first step whose hash differed from the reference,
+     *         or NONE if every step compared matched.
+     */
+    public int getDivergentStep()
+    {
+        return divergentStep;
+    }
+
+    /**
+     * @return A line telling how a run compared with the reference.
+     */
+    public String getReport()
+    {
+        if(mode == Mode.RECORD) {
+            return "Recorded " + (firstStep == NONE ? 0 : nextStep - firstStep) + " steps";
+        }
+        if(divergentStep == NONE) {
+            return "Matched the reference for " + checked + " steps";
+        }
+        return "Diverged from the reference at step " + divergentStep + ": expected " +
+               Long.toHexString(expected) + ", found " + Long.toHexString(actual);
+    }
+
+    /**
+     * Write out the hashes recorded and close the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void close() throws IOException
+    {
+        if(channel != null) {
+            try {
+                flush();
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Write out the buffered bytes.
+     */
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
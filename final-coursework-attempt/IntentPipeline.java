@@ -0,0 +1,458 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Steps the entities of an EntityStore in two phases, so that the
+ * outcome of a step does not depend on the order in which entities
+ * are visited, nor on how many threads visit them.
+ *
+ * In the intent phase every entity looks at the field as it was at
+ * the start of the phase, and only records what it wants to do: die,
+ * move to a cell, eat the occupant of a cell, give birth or seed into
+ * cells, and infect its neighbours. Nothing is changed, so the
+ * entities are looked at in parallel, in chunks of ids. The random
+ * numbers of an entity come from a CounterRandom keyed by the step and
+ * the entity's id, never from a shared generator.
+ *
+ * In the commit phase the intents are applied on one thread. Two
+ * entities may want the same free cell; the one with the highest
+ * priority, again worked out from the seed, the step and the id, gets
+ * it and the other stays where it is or has one young fewer. Predators
+ * eat first, so that an animal that is eaten does not eat in the same
+ * step. Everything else is applied in id order.
+ *
+ * The plants have their own round before the animals, as in the other
+ * engines, so the animals see the plants seeded in the same step.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class IntentPipeline
+{
+    // What an entity intends to do in a round.
+    private static final byte NONE = 0;
+    private static final byte DIE = 1;
+    private static final byte STAY = 2;
+    private static final byte MOVE = 3;
+    private static final byte EAT = 4;
+    // The most cells an entity can want for its young: all its neighbours.
+    private static final int MAX_YOUNG = 8;
+    // The claims an entity can make: one per young and one for its target.
+    private static final int SLOTS = MAX_YOUNG + 1;
+    // The slot of the claim on the target cell.
+    private static final int TARGET_SLOT = MAX_YOUNG;
+    // The owner of a cell nobody has claimed.
+    private static final int UNCLAIMED = -1;
+    // The number of ids looked at by one task of the intent phase.
+    private static final int CHUNK_SIZE = 2048;
+
+    // The entities stepped.
+    private EntityStore store;
+    // The field they live in.
+    private Field field;
+    // The random numbers of the pipeline.
+    private CounterRandom random;
+    // The pool running the intent phase.
+    private ForkJoinPool pool;
+    // The intent of each entity in the current round, indexed by id.
+    private byte[] kind;
+    // The cell each entity moves into or eats from.
+    private int[] target;
+    // The entity each entity eats.
+    private int[] prey;
+    // The cells each entity wants for its young, MAX_YOUNG per id.
+    private int[] young;
+    private byte[] youngCount;
+    // The animals each entity infects, MAX_YOUNG per id.
+    private int[] victims;
+    private byte[] victimCount;
+    // The claim winning each cell, and its priority.
+    private int[] owner;
+    private long[] ownerPriority;
+    // The cells claimed in the current round.
+    private int[] claimed;
+    private int claimedCount;
+    // Which entities are eaten in the current round.
+    private boolean[] eaten;
+
+    /**
+     * Create a pipeline stepping the given store.
+     * @param store The entities to step.
+     * @param field The field they live in.
+     * @param seed The seed the random numbers are worked out from.
+     * @param parallelism The number of threads of the intent phase.
+     */
+    public IntentPipeline(EntityStore store, Field field, long seed, int parallelism)
+    {
+        this.store = store;
+        this.field = field;
+        random = new CounterRandom(seed);
+        pool = new ForkJoinPool(Math.max(parallelism, 1));
+        int cells = field.getDepth() * field.getWidth();
+        owner = new int[cells];
+        Arrays.fill(owner, UNCLAIMED);
+        ownerPriority = new long[cells];
+        claimed = new int[cells];
+        allocate(0);
+    }
+
+    /**
+     * @return The seed the random numbers are worked out from.
+     */
+    public long getSeed()
+    {
+        return random.getSeed();
+    }
+
+    /**
+     * @return The number of threads of the intent phase.
+     */
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the threads of the pipeline.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Run one step: the plants have a round if plants can act, then
+     * the animals of every species that can act. Entities born during
+     * the step first act in the next one.
+     * @param time The time of the day of the step.
+     * @param weather The weather of the step.
+     * @param step The number of the step, which the random numbers
+     *             of the entities depend on.
+     */
+    public void step(Time time, Weather weather, int step)
+    {
+        boolean[] acting = new boolean[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            acting[code] = Species.canAct(code, time, weather);
+        }
+        store.beginStep(acting);
+        allocate(store.getStepCount());
+        if(acting[Species.PLANT]) {
+            round(true, 2 * step);
+        }
+        round(false, 2 * step + 1);
+        store.endStep();
+    }
+
+    /**
+     * Run one round: the intents of the entities acting in it,
+     * then their commit.
+     * @param plants Whether the plants act, rather than the animals.
+     * @param round A number unique to the round.
+     */
+    private void round(boolean plants, int round)
+    {
+        int count = store.getStepCount();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(int start = 0; start < count; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(start + CHUNK_SIZE, count);
+            tasks.add(() -> {
+                // The ordering of the neighbours of every entity of the chunk.
+                int[] permutations = new int[to - from];
+                random.fill(round, from, CounterRandom.NEIGHBOURS, Neighbourhood.PERMUTATION_COUNT,
+                            permutations, 0, permutations.length);
+                CounterRandom.Stream draws = random.stream();
+                for(int id = from; id < to; id++) {
+                    intend(id, plants, round, permutations[id - from], draws);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        commit(round);
+    }
+
+    /**
+     * Record the intent of an entity, reading but never changing the
+     * store and the field.
+     * @param id The entity.
+     * @param plants Whether the plants act in this round.
+     * @param round The round.
+     * @param permutation The ordering of the entity's neighbours.
+     * @param draws A stream to use for the entity's random numbers.
+     */
+    private void intend(int id, boolean plants, int round, int permutation, CounterRandom.Stream draws)
+    {
+        kind[id] = NONE;
+        youngCount[id] = 0;
+        victimCount[id] = 0;
+        byte code = store.getSpecies(id);
+        if(!store.isAlive(id) || !store.isActive(code) || (code == Species.PLANT) != plants) {
+            return;
+        }
+        if(store.isDue(id)) {
+            kind[id] = DIE;
+            return;
+        }
+        draws.reset(round, id, CounterRandom.BREEDING);
+        int width = field.getWidth();
+        int index = store.getCell(id);
+        Surroundings around = field.surroundings(index / width, index % width, permutation);
+
+        if(plants) {
+            kind[id] = STAY;
+            if(store.getAge(id) >= Plant.BREEDING_AGE && draws.nextDouble() <= Plant.BREEDING_PROBABILITY) {
+                wantYoung(id, code, around, draws.nextInt(Plant.MAX_LITTER_SIZE) + 1);
+            }
+            return;
+        }
+
+        if(store.isInfected(id)) {
+            for(int i = 0; i < around.size(); i++) {
+                if(Species.isAnimal(around.getSpecies(i))) {
+                    victims[id * MAX_YOUNG + victimCount[id]] = store.getIdAt(cellOf(around, i));
+                    victimCount[id]++;
+                }
+            }
+        }
+
+        int births = 0;
+        if(code == Species.DEER || code == Species.MOUSE) {
+            if(store.getAge(id) >= EntityStore.breedingAge(code) && !store.isMale(id) &&
+               findPartner(id, code, around, draws)) {
+                births = draws.nextInt(EntityStore.maxLitterSize(code)) + 1;
+            }
+        }
+        else if(store.getAge(id) >= EntityStore.breedingAge(code) &&
+                draws.nextDouble() <= EntityStore.breedingProbability(code)) {
+            births = draws.nextInt(EntityStore.maxLitterSize(code)) + 1;
+        }
+        wantYoung(id, code, around, births);
+
+        for(int i = 0; i < around.size(); i++) {
+            if(EntityStore.foodValue(code, around.getSpecies(i)) > 0) {
+                kind[id] = EAT;
+                target[id] = cellOf(around, i);
+                prey[id] = store.getIdAt(target[id]);
+                return;
+            }
+        }
+        int free = around.takeFree(code);
+        if(free >= 0) {
+            kind[id] = MOVE;
+            target[id] = cellOf(around, free);
+        }
+        else {
+            // Overcrowding.
+            kind[id] = DIE;
+        }
+    }
+
+    /**
+     * Record the free cells an entity wants for its young.
+     * @param id The entity.
+     * @param code Its species code.
+     * @param around Its neighbourhood.
+     * @param births The number of young it has.
+     */
+    private void wantYoung(int id, byte code, Surroundings around, int births)
+    {
+        for(int b = 0; b < births; b++) {
+            int free = around.takeFree(code);
+            if(free < 0) {
+                return;
+            }
+            young[id * MAX_YOUNG + youngCount[id]] = cellOf(around, free);
+            youngCount[id]++;
+        }
+    }
+
+    /**
+     * Look at the first neighbour of the same species, like
+     * Deer.findPartner and Mouse.findPartner.
+     * @return true if it is of the other gender and they breed.
+     */
+    private boolean findPartner(int id, byte code, Surroundings around, CounterRandom.Stream draws)
+    {
+        for(int i = 0; i < around.size(); i++) {
+            if(around.getSpecies(i) == code) {
+                int partner = store.getIdAt(cellOf(around, i));
+                boolean differ = store.isMale(id) != store.isMale(partner);
+                return differ && draws.nextDouble() <= EntityStore.breedingProbability(code);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply the intents of a round: settle who gets each claimed
+     * cell, then who is eaten, then change the store in id order.
+     * @param round The round.
+     */
+    private void commit(int round)
+    {
+        int count = store.getStepCount();
+        for(int id = 0; id < count; id++) {
+            for(int b = 0; b < youngCount[id]; b++) {
+                claim(young[id * MAX_YOUNG + b], id * SLOTS + b, round);
+            }
+            if(kind[id] == MOVE || kind[id] == EAT) {
+                claim(target[id], id * SLOTS + TARGET_SLOT, round);
+            }
+        }
+
+        // Predators eat first, so that what they eat does not.
+        if(eaten.length < store.getSize()) {
+            eaten = new boolean[store.getSize() * 2];
+        }
+        Arrays.fill(eaten, 0, store.getSize(), false);
+        for(int id = 0; id < count; id++) {
+            if(kind[id] == EAT && wins(id, target[id], TARGET_SLOT) &&
+               store.getSpecies(prey[id]) != Species.PLANT) {
+                eaten[prey[id]] = true;
+            }
+        }
+        for(int id = 0; id < count; id++) {
+            if(kind[id] == EAT && !eaten[id] && wins(id, target[id], TARGET_SLOT) &&
+               store.getSpecies(prey[id]) == Species.PLANT) {
+                eaten[prey[id]] = true;
+            }
+        }
+
+        for(int id = 0; id < count; id++) {
+            if(kind[id] == NONE) {
+                continue;
+            }
+            if(eaten[id]) {
+                store.kill(id);
+                continue;
+            }
+            byte code = store.getSpecies(id);
+            boolean infected = store.isInfected(id);
+            for(int v = 0; v < victimCount[id]; v++) {
+                int victim = victims[id * MAX_YOUNG + v];
+                if(store.isAlive(victim)) {
+                    store.infect(victim, true);
+                }
+            }
+            for(int b = 0; b < youngCount[id]; b++) {
+                int cell = young[id * MAX_YOUNG + b];
+                if(wins(id, cell, b)) {
+                    int born = store.spawn(code, cell, code == Species.PLANT);
+                    if(infected) {
+                        store.infect(born, true);
+                    }
+                }
+            }
+            if(kind[id] == DIE) {
+                store.kill(id);
+            }
+            else if(kind[id] == EAT && wins(id, target[id], TARGET_SLOT)) {
+                store.kill(prey[id]);
+                store.feed(id, EntityStore.foodValue(code, store.getSpecies(prey[id])));
+                store.move(id, target[id]);
+            }
+            else if(kind[id] == MOVE && wins(id, target[id], TARGET_SLOT)) {
+                store.move(id, target[id]);
+            }
+        }
+
+        for(int c = 0; c < claimedCount; c++) {
+            owner[claimed[c]] = UNCLAIMED;
+        }
+        claimedCount = 0;
+    }
+
+    /**
+     * Claim a cell for an entity, keeping the claim with the highest
+     * priority, and the lowest claim of equal priority.
+     * @param index The cell.
+     * @param claim The entity's id times SLOTS plus the slot.
+     * @param round The round.
+     */
+    private void claim(int index, int claim, int round)
+    {
+        long priority = random.nextLong(round, claim, CounterRandom.CLAIM, 0);
+        if(owner[index] == UNCLAIMED) {
+            claimed[claimedCount++] = index;
+        }
+        else if(ownerPriority[index] > priority ||
+                (ownerPriority[index] == priority && owner[index] < claim)) {
+            return;
+        }
+        owner[index] = claim;
+        ownerPriority[index] = priority;
+    }
+
+    /**
+     * @return true if an entity's claim on a cell won it.
+     */
+    private boolean wins(int id, int index, int slot)
+    {
+        return owner[index] == id * SLOTS + slot;
+    }
+
+    /**
+     * Return the index of the cell of a neighbour in a snapshot.
+     */
+    private int cellOf(Surroundings around, int neighbour)
+    {
+        int position = around.getPosition(neighbour);
+        return field.getIndex(Location.unpackRow(position), Location.unpackCol(position));
+    }
+
+    /**
+     * Make room for the intents of the given number of entities.
+     * @param count The number of entities acting.
+     */
+    private void allocate(int count)
+    {
+        if(kind == null || kind.length < count) {
+            int capacity = Math.max(count, kind == null ? 1024 : kind.length * 2);
+            kind = new byte[capacity];
+            target = new int[capacity];
+            prey = new int[capacity];
+            young = new int[capacity * MAX_YOUNG];
+            youngCount = new byte[capacity];
+            victims = new int[capacity * MAX_YOUNG];
+            victimCount = new byte[capacity];
+            eaten = new boolean[capacity];
+        }
+    }
+
+    /**
+     * Run tasks that only read the store and the field, waiting for
+     * all of them.
+     * @param tasks The tasks.
+     */
+    private void runAll(List<Callable<Void>> tasks)
+    {
+        try {
+            if(pool.getParallelism() == 1) {
+                for(Callable<Void> task : tasks) {
+                    task.call();
+                }
+            }
+            else {
+                for(Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Intent phase interrupted", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Intent phase failed", e.getCause());
+        }
+        catch(Exception e) {
+            throw new IllegalStateException("Intent phase failed", e);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only record of every change made to the occupants of a
+ * field: births, deaths, moves and infections. Together with a
+ * checkpoint taken at any step since the journal started, it is
+ * enough to work out who occupies each cell at any later step, with
+ * their gender and whether they are infected (see JournalReplay).
+ *
+ * The changes of a step are collected in memory and appended to the
+ * file, through a buffered channel, when the step ends. The file is
+ * laid out, big-endian, as a header:
+ *
+ *     int    MAGIC
+ *     short  VERSION
+ *     int    depth and width of the field
+ *     int    the step the journal starts after
+ *
+ * followed by one block per step with changes:
+ *
+ *     varint  steps since the previous block (or the start)
+ *     varint  the number of bytes of changes that follow
+ *     changes
+ *
+ * Each change is one byte holding its kind in the low three bits and,
+ * for a birth, the species and gender above them, or for a move, the
+ * direction of the neighbouring cell moved to. The cell follows: the
+ * difference from the cell of the change before in the block (from 0
+ * for the first), zigzag encoded as a varint, so that changes close
+ * to one another, as those of one animal are, take a byte or two.
+ * A block can so be skipped without decoding it.
+ *
+ * Changes may be recorded from several threads at once.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Journal implements Closeable
+{
+    // The first bytes of every journal: "SIMJ".
+    static final int MAGIC = 0x53494D4A;
+    // The version of the format written.
+    static final short VERSION = 1;
+    // The kinds of change.
+    static final int BORN = 0;
+    static final int DIED = 1;
+    static final int MOVED = 2;
+    static final int INFECTED = 3;
+    // The bits of the first byte of a change holding its kind.
+    static final int KIND_MASK = 7;
+    // The bit of a birth set for a male.
+    static final int MALE_BIT = 0x40;
+    // The row and column offsets of the directions of a move.
+    static final int[] ROW_OFFSETS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    static final int[] COL_OFFSETS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    // The size of the buffer between the blocks and the channel.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The channel to the file.
+    private FileChannel channel;
+    // The bytes not yet written to the channel.
+    private ByteBuffer buffer;
+    // The width of the field, to find the direction of a move.
+    private int width;
+    // The changes of the current step.
+    private byte[] changes;
+    private int length;
+    // The cell of the last change recorded in the current step.
+    private int lastCell;
+    // The step of the last block written.
+    private int lastStep;
+    // The number of changes recorded.
+    private long changeCount;
+
+    /**
+     * Start a journal of the changes made after the given step.
+     * @param path Where to write the journal; an existing file is replaced.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param step The current step.
+     * @throws IOException If the file cannot be created.
+     */
+    public Journal(Path path, int depth, int width, int step) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.width = width;
+        changes = new byte[BUFFER_SIZE];
+        lastStep = step;
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(depth);
+        buffer.putInt(width);
+        buffer.putInt(step);
+    }
+
+    /**
+     * Record a birth, or any other participant being placed in the field.
+     * @param cell The index of its cell.
+     * @param species Its species code.
+     * @param male Whether it is male.
+     */
+    public synchronized void born(int cell, byte species, boolean male)
+    {
+        record(BORN | species << 3 | (male ? MALE_BIT : 0), cell);
+    }
+
+    /**
+     * Record a death.
+     * @param cell The index of the cell the participant died in.
+     */
+    public synchronized void died(int cell)
+    {
+        record(DIED, cell);
+    }
+
+    /**
+     * Record a move to a neighbouring cell.
+     * @param from The index of the cell moved from.
+     * @param to The index of the cell moved to.
+     */
+    public synchronized void moved(int from, int to)
+    {
+        int rowOffset = to / width - from / width;
+        int colOffset = to % width - from % width;
+        int direction = 0;
+        while(direction < ROW_OFFSETS.length &&
+              (ROW_OFFSETS[direction] != rowOffset || COL_OFFSETS[direction] != colOffset)) {
+            direction++;
+        }
+        if(direction == ROW_OFFSETS.length) {
+            throw new IllegalArgumentException("Cell " + to + " is not next to cell " + from);
+        }
+        record(MOVED | direction << 3, from);
+        lastCell = to;
+    }
+
+    /**
+     * Record an animal becoming infected.
+     * @param cell The index of its cell.
+     */
+    public synchronized void infected(int cell)
+    {
+        record(INFECTED, cell);
+    }
+
+    /**
+     * End a step, appending its changes to the file.
+     * @param step The step that has ended.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void endStep(int step) throws IOException
+    {
+        lastCell = 0;
+        if(length == 0) {
+            return;
+        }
+        if(buffer.remaining() < 10) {
+            flush();
+        }
+        putVarint(step - lastStep);
+        putVarint(length);
+        int written = 0;
+        while(written < length) {
+            if(!buffer.hasRemaining()) {
+                flush();
+            }
+            int part = Math.min(buffer.remaining(), length - written);
+            buffer.put(changes, written, part);
+            written += part;
+        }
+        lastStep = step;
+        length = 0;
+    }
+
+    /**
+     * @return The number of changes recorded.
+     */
+    public synchronized long getChangeCount()
+    {
+        return changeCount;
+    }
+
+    /**
+     * Write out everything recorded and close the file. Changes
+     * recorded since the last step ended are lost.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void close() throws IOException
+    {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Record a change concerning a cell.
+     * @param head The first byte of the change.
+     * @param cell The index of the cell.
+     */
+    private void record(int head, int cell)
+    {
+        ensure(6);
+        changes[length++] = (byte) head;
+        int delta = cell - lastCell;
+        // Zigzag: small differences of either sign give small numbers.
+        int value = (delta << 1) ^ (delta >> 31);
+        while((value & ~0x7F) != 0) {
+            changes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        changes[length++] = (byte) value;
+        lastCell = cell;
+        changeCount++;
+    }
+
+    /**
+     * Make room for the given number of bytes of changes.
+     */
+    private void ensure(int needed)
+    {
+        if(length + needed > changes.length) {
+            changes = Arrays.copyOf(changes, changes.length * 2);
+        }
+    }
+
+    /**
+     * Put a non-negative number in the buffer as a varint.
+     */
+    private void putVarint(int value)
+    {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Write out the buffered bytes.
+     */
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
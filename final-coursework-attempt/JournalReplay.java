@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Works out the occupants of a field at any step of a recorded run,
+ * without running the simulation: it starts from a checkpoint and
+ * applies the changes recorded in a journal since, step by step.
+ * Each cell is known by the species of its occupant, and whether
+ * that occupant is male and infected. Ages and food levels are not
+ * recorded; they are had by restoring the checkpoint and running on.
+ *
+ * The journal is mapped into memory, so it is read as the operating
+ * system pages it in, and must be smaller than 2GB.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class JournalReplay
+{
+    // The flags of a cell.
+    private static final byte MALE = 1;
+    private static final byte INFECTED = 2;
+
+    // The depth and width of the field.
+    private int depth, width;
+    // The species code of the occupant of each cell, indexed as by
+    // Field.getIndex, and its flags.
+    private byte[] species;
+    private byte[] flags;
+    // The step the cells are at.
+    private int step;
+    // The journal, positioned at the next block.
+    private ByteBuffer journal;
+    // The step of the next block, or -1 if there is none.
+    private int nextStep;
+
+    /**
+     * Start from a checkpoint, taken while the journal was kept.
+     * @param checkpoint Where the checkpoint is.
+     * @param journalPath Where the journal is.
+     * @throws IOException If either file cannot be read, they are
+     *                     not of the same field, or the checkpoint
+     *                     was taken before the journal started.
+     */
+    public JournalReplay(Path checkpoint, Path journalPath) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            journal = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(journal.remaining() < 18 || journal.getInt() != Journal.MAGIC) {
+            throw new IOException("Not a journal: " + journalPath);
+        }
+        short version = journal.getShort();
+        if(version != Journal.VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+        depth = journal.getInt();
+        width = journal.getInt();
+        nextStep = journal.getInt();
+        species = new byte[depth * width];
+        flags = new byte[depth * width];
+        try(Checkpoint.Reader in = new Checkpoint.Reader(checkpoint)) {
+            if(in.getDepth() != depth || in.getWidth() != width) {
+                throw new IOException("The checkpoint is of a " + in.getDepth() + "x" + in.getWidth() +
+                                      " field, the journal of a " + depth + "x" + width + " one");
+            }
+            if(in.getStep() < nextStep) {
+                throw new IOException("The checkpoint was taken at step " + in.getStep() +
+                                      ", before the journal started at step " + nextStep);
+            }
+            step = in.getStep();
+            while(in.nextParticipant()) {
+                species[in.getCell()] = in.getSpecies();
+                flags[in.getCell()] = (byte) ((in.isMale() ? MALE : 0) | (in.isInfected() ? INFECTED : 0));
+            }
+        }
+        // The changes up to the checkpoint are already in it.
+        readStep();
+        while(nextStep != -1 && nextStep <= step) {
+            int length = readVarint();
+            journal.position(journal.position() + length);
+            readStep();
+        }
+    }
+
+    /**
+     * Apply the changes recorded up to the given step.
+     * @param target The step to move to, no earlier than the current one.
+     * @throws IllegalArgumentException If the step is earlier than the current one.
+     */
+    public void advanceTo(int target)
+    {
+        if(target < step) {
+            throw new IllegalArgumentException("Cannot go back from step " + step + " to step " + target);
+        }
+        while(nextStep != -1 && nextStep <= target) {
+            int length = readVarint();
+            int end = journal.position() + length;
+            int last = 0;
+            while(journal.position() < end) {
+                int head = journal.get() & 0xFF;
+                int delta = readVarint();
+                int cell = last + ((delta >>> 1) ^ -(delta & 1));
+                last = apply(head, cell);
+            }
+            readStep();
+        }
+        step = target;
+    }
+
+    /**
+     * @return The step the cells are at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The next step with changes not yet applied, or -1 if
+     *         every change in the journal has been applied.
+     */
+    public int getNextStep()
+    {
+        return nextStep;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @param index The cell index, as given by Field.getIndex.
+     * @return The species code of the occupant of the cell.
+     */
+    public byte getSpecies(int index)
+    {
+        return species[index];
+    }
+
+    /**
+     * @param index The cell index, as given by Field.getIndex.
+     * @return true if the occupant of the cell is male.
+     */
+    public boolean isMale(int index)
+    {
+        return (flags[index] & MALE) != 0;
+    }
+
+    /**
+     * @param index The cell index, as given by Field.getIndex.
+     * @return true if the occupant of the cell is infected.
+     */
+    public boolean isInfected(int index)
+    {
+        return (flags[index] & INFECTED) != 0;
+    }
+
+    /**
+     * Apply one change.
+     * @param head The first byte of the change.
+     * @param cell The cell it concerns.
+     * @return The cell the next change is relative to.
+     */
+    private int apply(int head, int cell)
+    {
+        switch(head & Journal.KIND_MASK) {
+            case Journal.BORN:
+                species[cell] = (byte) ((head >>> 3) & 7);
+                flags[cell] = (head & Journal.MALE_BIT) != 0 ? MALE : 0;
+                return cell;
+            case Journal.DIED:
+                species[cell] = Species.EMPTY;
+                flags[cell] = 0;
+                return cell;
+            case Journal.MOVED:
+                int direction = (head >>> 3) & 7;
+                int to = cell + Journal.ROW_OFFSETS[direction] * width + Journal.COL_OFFSETS[direction];
+                species[to] = species[cell];
+                flags[to] = flags[cell];
+                species[cell] = Species.EMPTY;
+                flags[cell] = 0;
+                return to;
+            case Journal.INFECTED:
+                flags[cell] |= INFECTED;
+                return cell;
+            default:
+                throw new IllegalStateException("Unknown change " + head + " in journal");
+        }
+    }
+
+    /**
+     * Read the step of the next block, if there is one.
+     */
+    private void readStep()
+    {
+        if(journal.hasRemaining()) {
+            nextStep += readVarint();
+        }
+        else {
+            nextStep = -1;
+        }
+    }
+
+    /**
+     * Read a varint from the journal.
+     */
+    private int readVarint()
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = journal.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        return value;
+    }
+}
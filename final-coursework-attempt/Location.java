@@ -6,6 +6,11 @@
  */
 public class Location
 {
+    // The largest depth or width of a field whose positions can be
+    // packed: a row and a column take 16 bits each, and the position
+    // (65535, 65535) would pack to -1, which stands for no cell.
+    public static final int MAX_PACKED_SIZE = 65535;
+
     // Row and column positions.
     private int row;
     private int col;
@@ -70,4 +75,36 @@ public class Location
     {
         return col;
     }
+    
+    /**
+     * Pack a row and column into a single int, using the same
+     * layout as hashCode: the row in the top 16 bits and the
+     * column in the bottom 16 bits. Nothing is checked: a field
+     * deeper or wider than MAX_PACKED_SIZE is refused when made.
+     * @param row The row, less than MAX_PACKED_SIZE.
+     * @param col The column, less than MAX_PACKED_SIZE.
+     * @return The packed position.
+     */
+    public static int pack(int row, int col)
+    {
+        return (row << 16) | col;
+    }
+    
+    /**
+     * @param packed A position packed by pack.
+     * @return The row of the packed position.
+     */
+    public static int unpackRow(int packed)
+    {
+        return packed >>> 16;
+    }
+    
+    /**
+     * @param packed A position packed by pack.
+     * @return The column of the packed position.
+     */
+    public static int unpackCol(int packed)
+    {
+        return packed & 0xFFFF;
+    }
 }
@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 /**
@@ -13,18 +12,20 @@ public class Mouse extends Animal
     // Characteristics shared by all mouses (class variables).
 
     // The age at which a mouse can start to breed.
-    private static final int BREEDING_AGE = 5;
+    static final int BREEDING_AGE = 5;
     // The age to which a mouse can live.
-    private static final int MAX_AGE = 50;
+    static final int MAX_AGE = 50;
     // The likelihood of a mouse breeding.
-    private static final double BREEDING_PROBABILITY = 0.43;
+    static final double BREEDING_PROBABILITY = 0.43;
     //The probability of being a male
-    private static final double MALE_PROBABILITY = 0.5;
+    static final double MALE_PROBABILITY = 0.5;
     // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 3;
+    static final int MAX_LITTER_SIZE = 3;
     // The food value of a single plant. In effect, this is the
     // number of steps a mouse can go before it has to eat again.
-    private static final int PLANT_FOOD_VALUE = 10;
+    static final int PLANT_FOOD_VALUE = 10;
+    // The food level of a mouse when it is created.
+    static final int INITIAL_FOOD_LEVEL = 10;
     
     
     // Individual characteristics (instance fields).
@@ -49,16 +50,28 @@ public class Mouse extends Animal
     {
         super(field, location);
         isMale = true;
-        foodLevel = 10;
+        foodLevel = INITIAL_FOOD_LEVEL;
         age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            age = getRandom().nextInt(MAX_AGE);
         }
         if(randomGender) {
-            if (rand.nextDouble() <= MALE_PROBABILITY){
+            if (getRandom().nextDouble() <= MALE_PROBABILITY){
                 isMale = false;
             }
         }
+        recordBirth();
+    }
+
+    /**
+     * Mice only act during sunny or foggy nights.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     * @return true if mice act at the given time and weather.
+     */
+    static boolean canAct(Time time, Weather weather)
+    {
+        return !time.isDay() && (weather.isSunny() || weather.isFoggy());
     }
 
     /**
@@ -73,17 +86,19 @@ public class Mouse extends Animal
     public void act(List<Animal> newMice, Time time, Weather weather)
     {
         //Mice only act during the night whether despite it is sunny or foggy..
-        if (!time.isDay() && (weather.isSunny() || weather.isFoggy())){
+        if (canAct(time, weather)){
             incrementAge();
-            // They infect in case they are infected
-            if(isAlive() && isInfected()) infect();
             if(isAlive()) {
-                giveBirth(newMice);            
+                // Every step of the act works from one look at the neighbours.
+                Surroundings around = lookAround();
+                // They infect in case they are infected
+                if(isInfected()) infect(around);
+                giveBirth(newMice, around);            
                 // Move towards a source of food if found.
-                Location newLocation = findFood();
+                Location newLocation = findFood(around);
                 if(newLocation == null) { 
                     // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
+                    newLocation = around.takeFreeLocation(Species.MOUSE);
                 }
                 // See if it was possible to move.
                 if(newLocation != null) {
@@ -113,22 +128,20 @@ public class Mouse extends Animal
     /**
      * Look for plants adjacent to the current location.
      * Only the first live plant is eaten.
+     * @param around The snapshot of the mouse's neighbourhood.
      * @return Where food was found, or null if it wasn't.
      */
-    private Location findFood()
+    private Location findFood(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Plant) {
-                Plant plant = (Plant) animal;
+        for(int i = 0; i < around.size(); i++) {
+            byte species = around.getSpecies(i);
+            if(species == Species.PLANT) {
+                Plant plant = (Plant) around.getOccupant(i);
                 if(plant.isAlive()) { 
                     plant.setDead();
+                    around.setSpecies(i, Species.EMPTY);
                     foodLevel = PLANT_FOOD_VALUE;
-                    return where;
+                    return around.getLocation(i);
                 }
             }
         }
@@ -139,16 +152,18 @@ public class Mouse extends Animal
      * Check whether or not this mouse is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newMice A list to return newly born mouse.
+     * @param around The snapshot of the mouse's neighbourhood.
      */
-    private void giveBirth(List<Animal> newMice)
+    private void giveBirth(List<Animal> newMice, Surroundings around)
     {
-        // New mouse are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New mice are born into free adjacent locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
+        int births = breed(around);
+        for(int b = 0; b < births; b++) {
+            Location loc = around.takeFreeLocation(Species.MOUSE);
+            if(loc == null) {
+                break;
+            }
             Mouse young = new Mouse(false, field, loc, true);
             newMice.add(young);
             if (infected) {
@@ -160,19 +175,15 @@ public class Mouse extends Animal
     /**
      * Look for mice adjacent to the current location.
      * Only the first live mouse is taken into consideration.
+     * @param around The snapshot of the mouse's neighbourhood.
      * @return If the deer has an adjacent mouse with different gender.
      */
-    private boolean findPartner()
+    private boolean findPartner(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Mouse) {
-                Mouse mouse = (Mouse) animal;
-                if(isMale != mouse.getGender() && rand.nextDouble() <= BREEDING_PROBABILITY) { 
+        for(int i = 0; i < around.size(); i++) {
+            if(around.getSpecies(i) == Species.MOUSE) {
+                Mouse mouse = (Mouse) around.getOccupant(i);
+                if(isMale != mouse.getGender() && getRandom().nextDouble() <= BREEDING_PROBABILITY) { 
                     return true;
                 }
                 else { 
@@ -186,13 +197,14 @@ public class Mouse extends Animal
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param around The snapshot of the mouse's neighbourhood.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(Surroundings around)
     {
         int births = 0;
-        if(canBreed() && findPartner()) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && findPartner(around)) {
+            births = getRandom().nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -214,4 +226,41 @@ public class Mouse extends Animal
     {
         return isMale;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The mouse's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * @return The mouse's food level.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * @return true if the mouse is male.
+     */
+    boolean isMale()
+    {
+        return isMale;
+    }
+
+    /**
+     * Set the mouse's age, food level and gender.
+     * @param age The age.
+     * @param foodLevel The food level.
+     * @param male Whether the mouse is male.
+     */
+    void restore(int age, int foodLevel, boolean male)
+    {
+        this.age = age;
+        this.foodLevel = foodLevel;
+        isMale = male;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * A reusable cursor over the cells adjacent to a location.
+ * The neighbours are produced as packed row/column ints (see
+ * Location.pack) in a random order, without creating any objects.
+ *
+ * The order is taken from a table holding every permutation of the
+ * eight neighbours. Picking one permutation uniformly and skipping
+ * the neighbours that fall outside the field gives every ordering
+ * of the valid neighbours the same probability, just like shuffling
+ * a list of them.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Neighbourhood
+{
+    // The number of cells adjacent to a location.
+    private static final int SIZE = 8;
+    // The number of orderings of the neighbours (8!).
+    static final int PERMUTATION_COUNT = 40320;
+    // Row and column offsets of each neighbour.
+    private static final int[] ROW_OFFSETS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] COL_OFFSETS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    // Every ordering of the neighbours, SIZE entries per permutation.
+    private static final byte[] PERMUTATIONS = createPermutations();
+
+    // The field the cursor runs over.
+    private Field field;
+    // The location whose neighbours are produced.
+    private int row, col;
+    // Where the current permutation starts in the table.
+    private int start;
+    // How many entries of the current permutation have been used.
+    private int position;
+    // The next neighbour to return, or -1 if there is none.
+    private int next;
+
+    /**
+     * Create a cursor over the neighbourhoods of the given field.
+     * The orderings are drawn from the random numbers of the field.
+     * @param field The field the neighbourhoods lie in.
+     */
+    public Neighbourhood(Field field)
+    {
+        this.field = field;
+        next = -1;
+    }
+
+    /**
+     * Start producing the neighbours of the given location.
+     * @param location The location whose neighbours are wanted.
+     */
+    public void reset(Location location)
+    {
+        reset(location.getRow(), location.getCol());
+    }
+
+    /**
+     * Start producing the neighbours of the given cell, in a newly
+     * chosen random order.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void reset(int row, int col)
+    {
+        reset(row, col, field.getRandom().nextInt(PERMUTATION_COUNT));
+    }
+
+    /**
+     * Start producing the neighbours of the given cell, in the given
+     * order rather than a randomly chosen one.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param permutation Which ordering, below PERMUTATION_COUNT.
+     */
+    public void reset(int row, int col, int permutation)
+    {
+        this.row = row;
+        this.col = col;
+        start = permutation * SIZE;
+        position = 0;
+        advance();
+    }
+
+    /**
+     * @return true if there are neighbours left to produce.
+     */
+    public boolean hasNext()
+    {
+        return next >= 0;
+    }
+
+    /**
+     * Return the next neighbour.
+     * @return The neighbour, packed as by Location.pack.
+     */
+    public int next()
+    {
+        int result = next;
+        advance();
+        return result;
+    }
+
+    /**
+     * Find the next neighbour of the current permutation which lies
+     * within the field.
+     */
+    private void advance()
+    {
+        while(position < SIZE) {
+            int neighbour = PERMUTATIONS[start + position];
+            position++;
+            int nextRow = row + ROW_OFFSETS[neighbour];
+            int nextCol = col + COL_OFFSETS[neighbour];
+            if(nextRow >= 0 && nextRow < field.getDepth() &&
+               nextCol >= 0 && nextCol < field.getWidth()) {
+                next = Location.pack(nextRow, nextCol);
+                return;
+            }
+        }
+        next = -1;
+    }
+
+    /**
+     * Build the table of all orderings of the neighbours, in
+     * lexicographic order.
+     * @return The orderings, SIZE entries each.
+     */
+    private static byte[] createPermutations()
+    {
+        byte[] table = new byte[PERMUTATION_COUNT * SIZE];
+        byte[] current = new byte[SIZE];
+        for(int i = 0; i < SIZE; i++) {
+            current[i] = (byte) i;
+        }
+        for(int p = 0; p < PERMUTATION_COUNT; p++) {
+            System.arraycopy(current, 0, table, p * SIZE, SIZE);
+            nextPermutation(current);
+        }
+        return table;
+    }
+
+    /**
+     * Rearrange the given array into the next permutation in
+     * lexicographic order.
+     * @param values The permutation to advance.
+     */
+    private static void nextPermutation(byte[] values)
+    {
+        int i = values.length - 2;
+        while(i >= 0 && values[i] >= values[i + 1]) {
+            i--;
+        }
+        if(i < 0) {
+            return;
+        }
+        int j = values.length - 1;
+        while(values[j] <= values[i]) {
+            j--;
+        }
+        swap(values, i, j);
+        for(int left = i + 1, right = values.length - 1; left < right; left++, right--) {
+            swap(values, left, right);
+        }
+    }
+
+    /**
+     * Exchange two entries of an array.
+     */
+    private static void swap(byte[] values, int i, int j)
+    {
+        byte temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Controls how fast a simulation runs. The pacer can hold the
+ * simulation to a target number of steps per second, let it run as
+ * fast as possible, or let it run as fast as possible while only
+ * showing a limited number of frames per second. The simulation can
+ * also be paused, advanced one step at a time while paused, and
+ * resumed. All settings may be changed from another thread while a
+ * simulation is running.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Pacer
+{
+    /**
+     * The ways in which a pacer can pace a simulation.
+     */
+    public enum Mode
+    {
+        // Run at a target number of steps per second, showing every step.
+        TARGET_RATE,
+        // Run as fast as possible, showing every step.
+        MAX_THROUGHPUT,
+        // Run as fast as possible, showing a fixed number of frames per second.
+        FIXED_FRAME_RATE
+    }
+
+    // The number of nanoseconds in a second.
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    // The current mode.
+    private Mode mode;
+    // The time between the starts of two steps in TARGET_RATE mode.
+    private long stepPeriod;
+    // The time between two frames in FIXED_FRAME_RATE mode.
+    private long framePeriod;
+    // When the next step may start in TARGET_RATE mode.
+    private long nextStepTime;
+    // When the next frame is due in FIXED_FRAME_RATE mode.
+    private long nextFrameTime;
+    // Whether the simulation is paused.
+    private boolean paused;
+    // Steps that may still be taken while paused.
+    private int singleSteps;
+
+    /**
+     * Create a pacer.
+     * @param mode The initial mode.
+     * @param stepsPerSecond The target rate for TARGET_RATE mode.
+     * @param framesPerSecond The frame rate for FIXED_FRAME_RATE mode.
+     */
+    public Pacer(Mode mode, double stepsPerSecond, double framesPerSecond)
+    {
+        this.mode = mode;
+        setStepsPerSecond(stepsPerSecond);
+        setFramesPerSecond(framesPerSecond);
+        nextStepTime = System.nanoTime();
+        nextFrameTime = nextStepTime;
+        paused = false;
+        singleSteps = 0;
+    }
+
+    /**
+     * Wait until the next step may be taken. This blocks while the
+     * pacer is paused, unless a single step has been requested, and
+     * in TARGET_RATE mode until the step period has elapsed since the
+     * previous step started. The time the previous step took is
+     * therefore subtracted from the wait.
+     * @return true if the step may be taken, false if the waiting
+     *         thread was interrupted; its interrupt status is then
+     *         set again, and no step should be taken.
+     */
+    public synchronized boolean awaitStep()
+    {
+        try {
+            boolean waiting = true;
+            while(waiting) {
+                if(paused) {
+                    if(singleSteps > 0) {
+                        singleSteps--;
+                        waiting = false;
+                    }
+                    else {
+                        wait();
+                    }
+                }
+                else if(mode == Mode.TARGET_RATE) {
+                    long remaining = nextStepTime - System.nanoTime();
+                    if(remaining > 0) {
+                        wait(remaining / 1000000, (int) (remaining % 1000000));
+                    }
+                    else {
+                        waiting = false;
+                    }
+                }
+                else {
+                    waiting = false;
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        // A step that overran its period is not made up for
+        // with a burst of later steps.
+        nextStepTime = Math.max(nextStepTime + stepPeriod, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Decide whether the step just taken should be shown. Every step
+     * is shown, except in FIXED_FRAME_RATE mode, where a step is only
+     * shown once the frame period has elapsed since the last one.
+     * Steps taken while paused are always shown.
+     * @return true if the observers should be told about the step.
+     */
+    public synchronized boolean isFrameDue()
+    {
+        if(mode != Mode.FIXED_FRAME_RATE || paused) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if(now - nextFrameTime >= 0) {
+            nextFrameTime = now + framePeriod;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop the simulation before its next step.
+     */
+    public synchronized void pause()
+    {
+        paused = true;
+        notifyAll();
+    }
+
+    /**
+     * Let a paused simulation take one more step. This does nothing
+     * while the simulation is running, so that requests made then do
+     * not pile up for the next pause.
+     */
+    public synchronized void singleStep()
+    {
+        if(paused) {
+            singleSteps++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Let a paused simulation continue.
+     */
+    public synchronized void resume()
+    {
+        paused = false;
+        singleSteps = 0;
+        nextStepTime = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * @return true if the simulation is paused.
+     */
+    public synchronized boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Change the way the simulation is paced.
+     * @param mode The new mode.
+     */
+    public synchronized void setMode(Mode mode)
+    {
+        this.mode = mode;
+        nextStepTime = System.nanoTime();
+        nextFrameTime = nextStepTime;
+        notifyAll();
+    }
+
+    /**
+     * @return The current mode.
+     */
+    public synchronized Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Set the target rate used in TARGET_RATE mode.
+     * @param stepsPerSecond The number of steps per second, greater than zero.
+     */
+    public synchronized void setStepsPerSecond(double stepsPerSecond)
+    {
+        stepPeriod = (long) (NANOS_PER_SECOND / stepsPerSecond);
+        nextStepTime = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * Set the number of frames shown per second in FIXED_FRAME_RATE mode.
+     * @param framesPerSecond The number of frames per second, greater than zero.
+     */
+    public synchronized void setFramesPerSecond(double framesPerSecond)
+    {
+        framePeriod = (long) (NANOS_PER_SECOND / framesPerSecond);
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
@@ -19,15 +18,13 @@ public class Plant
     // Characteristics shared by all rabbits (class variables).
 
     // The age at which a rabbit can start to breed.
-    private static final int BREEDING_AGE = 3;
+    static final int BREEDING_AGE = 3;
     // The age to which a rabbit can live.
-    private static final int MAX_AGE = 400;
+    static final int MAX_AGE = 400;
     // The likelihood of a rabbit breeding.
-    private static final double BREEDING_PROBABILITY = 0.5;
+    static final double BREEDING_PROBABILITY = 0.5;
     // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 4;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    static final int MAX_LITTER_SIZE = 4;
     
     
     // The plant's age.
@@ -47,10 +44,24 @@ public class Plant
         setLocation(location);
         age = 0;
         if (randomAge){
-            age = rand.nextInt(MAX_AGE);
+            age = field.getRandom().nextInt(MAX_AGE);
+        }
+        Journal journal = field.getJournal();
+        if(journal != null) {
+            journal.born(field.getIndex(location.getRow(), location.getCol()), Species.PLANT, false);
         }
     }
     
+    /**
+     * Plants only grow during the night, whatever the weather.
+     * @param time The time of the day.
+     * @return true if plants act at the given time.
+     */
+    static boolean canAct(Time time)
+    {
+        return !time.isDay();
+    }
+
     /**
      * Make this Plant act.
      * The plants grow old and reproduce.
@@ -60,7 +71,7 @@ public class Plant
      public void act(List<Plant> newPlants, Time time)
     {
         //plants grow during the night at any weather.
-        if (!time.isDay()){
+        if (canAct(time)){
             incrementAge();
             if(isAlive()) {
                 reproduce(newPlants);
@@ -85,6 +96,10 @@ public class Plant
     {
         alive = false;
         if(location != null) {
+            Journal journal = field.getJournal();
+            if(journal != null) {
+                journal.died(field.getIndex(location.getRow(), location.getCol()));
+            }
             field.clear(location);
             location = null;
             field = null;
@@ -143,15 +158,19 @@ public class Plant
      */
     private void reproduce(List<Plant> newPlants)
     {
-        // New rabbits are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New plants grow into free adjacent locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Plant young = new Plant(true, field, loc);
-            newPlants.add(young);
+        if(births > 0) {
+            Surroundings around = field.surroundings(getLocation());
+            for(int b = 0; b < births; b++) {
+                Location loc = around.takeFreeLocation(Species.PLANT);
+                if(loc == null) {
+                    break;
+                }
+                Plant young = new Plant(true, field, loc);
+                newPlants.add(young);
+            }
         }
     }
     
@@ -162,6 +181,7 @@ public class Plant
      */
     private int breed()
     {
+        Random rand = getField().getRandom();
         int seeds = 0;
         if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
             seeds = rand.nextInt(MAX_LITTER_SIZE) + 1;
@@ -176,4 +196,21 @@ public class Plant
     {
         return age >= BREEDING_AGE;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The plant's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * Set the plant's age, as when it is restored from a checkpoint.
+     * @param age The age.
+     */
+    void restore(int age)
+    {
+        this.age = age;
+    }
+}
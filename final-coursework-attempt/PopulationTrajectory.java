@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+/**
+ * The population of every species at every step of one simulation
+ * run, together with the seed the run was started from.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class PopulationTrajectory
+{
+    // The seed of the run.
+    private long seed;
+    // The counts, Species.COUNT entries per recorded step.
+    private int[] counts;
+    // The number of steps recorded.
+    private int length;
+
+    /**
+     * Create an empty trajectory.
+     * @param seed The seed of the run.
+     * @param capacity The number of steps expected to be recorded.
+     */
+    public PopulationTrajectory(long seed, int capacity)
+    {
+        this.seed = seed;
+        counts = new int[Math.max(capacity, 1) * Species.COUNT];
+        length = 0;
+    }
+
+    /**
+     * Record the population of the field at the next step.
+     * @param field The field of the run.
+     */
+    public void record(Field field)
+    {
+        if((length + 1) * Species.COUNT > counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        for(int species = 0; species < Species.COUNT; species++) {
+            counts[length * Species.COUNT + species] = field.getCount(species);
+        }
+        length++;
+    }
+
+    /**
+     * @return The seed of the run.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The number of steps recorded, including the starting state.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Return the population of a species at a recorded step.
+     * @param step The step, 0 being the starting state.
+     * @param species The species code.
+     * @return How many of that species there were.
+     */
+    public int getCount(int step, int species)
+    {
+        return counts[step * Species.COUNT + species];
+    }
+
+    /**
+     * Check whether two trajectories hold exactly the same counts.
+     */
+    public boolean equals(Object obj)
+    {
+        if(obj instanceof PopulationTrajectory) {
+            PopulationTrajectory other = (PopulationTrajectory) obj;
+            return seed == other.seed && length == other.length &&
+                Arrays.equals(counts, 0, length * Species.COUNT,
+                              other.counts, 0, length * Species.COUNT);
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * @return A hash code consistent with equals.
+     */
+    public int hashCode()
+    {
+        int hash = Long.hashCode(seed);
+        for(int i = 0; i < length * Species.COUNT; i++) {
+            hash = 31 * hash + counts[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Decides which species starts in each cell of a new field. The field
+ * is cut into square tiles which are filled in parallel. Each cell
+ * gets one random number from a CounterRandom keyed by the cell's
+ * index, so a tile does not depend on any other, and the species
+ * chosen for a seed are the same whatever the number of threads.
+ *
+ * The species are tried in a fixed order, each with its own creation
+ * probability, and the first one that succeeds takes the cell. This is
+ * done with a single random number per cell, compared against the
+ * chance of each species being the one to take the cell.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Populator
+{
+    // The width and depth of a tile, in cells.
+    private static final int TILE_SIZE = 256;
+
+    // The species, in the order they are tried.
+    private byte[] order;
+    // The random number below which a cell gets each species or one
+    // tried before it.
+    private double[] thresholds;
+    // The number of tiles filled at the same time.
+    private int parallelism;
+
+    /**
+     * Create a populator.
+     * @param order The species codes, in the order they are tried.
+     * @param probabilities The creation probability of each of them.
+     * @param parallelism The number of tiles filled at the same time.
+     */
+    public Populator(byte[] order, double[] probabilities, int parallelism)
+    {
+        this.order = order.clone();
+        this.parallelism = Math.max(parallelism, 1);
+        thresholds = new double[order.length];
+        double untaken = 1;
+        double total = 0;
+        for(int i = 0; i < order.length; i++) {
+            total += untaken * probabilities[i];
+            untaken *= 1 - probabilities[i];
+            thresholds[i] = total;
+        }
+    }
+
+    /**
+     * Choose the starting species of every cell of a field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param random The random numbers, keyed by cell index.
+     * @return The species code of each cell, indexed as by
+     *         Field.getIndex; Species.EMPTY for a free cell.
+     */
+    public byte[] choose(int depth, int width, CounterRandom random)
+    {
+        byte[] chosen = new byte[depth * width];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(int top = 0; top < depth; top += TILE_SIZE) {
+            for(int left = 0; left < width; left += TILE_SIZE) {
+                int firstRow = top;
+                int firstCol = left;
+                tasks.add(() -> {
+                    fillTile(chosen, depth, width, firstRow, firstCol, random);
+                    return null;
+                });
+            }
+        }
+        runAll(tasks);
+        return chosen;
+    }
+
+    /**
+     * Choose the species of the cells of one tile.
+     * @param chosen The species code of each cell of the field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param top The first row of the tile.
+     * @param left The first column of the tile.
+     * @param random The random numbers, keyed by cell index.
+     */
+    private void fillTile(byte[] chosen, int depth, int width, int top, int left, CounterRandom random)
+    {
+        int length = Math.min(TILE_SIZE, width - left);
+        double[] draws = new double[length];
+        for(int row = top; row < Math.min(top + TILE_SIZE, depth); row++) {
+            int first = row * width + left;
+            random.fill(0, first, CounterRandom.POPULATE, draws, 0, length);
+            for(int i = 0; i < length; i++) {
+                chosen[first + i] = speciesFor(draws[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The species taking a cell given its random number.
+     */
+    private byte speciesFor(double draw)
+    {
+        for(int i = 0; i < order.length; i++) {
+            if(draw < thresholds[i]) {
+                return order[i];
+            }
+        }
+        return Species.EMPTY;
+    }
+
+    /**
+     * Run tasks that fill disjoint tiles, waiting for all of them.
+     * @param tasks The tasks.
+     */
+    private void runAll(List<Callable<Void>> tasks)
+    {
+        try {
+            if(parallelism == 1 || tasks.size() == 1) {
+                for(Callable<Void> task : tasks) {
+                    task.call();
+                }
+            }
+            else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    for(Future<Void> future : pool.invokeAll(tasks)) {
+                        future.get();
+                    }
+                }
+                finally {
+                    pool.shutdown();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Population interrupted", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Population failed", e.getCause());
+        }
+        catch(Exception e) {
+            throw new IllegalStateException("Population failed", e);
+        }
+    }
+}
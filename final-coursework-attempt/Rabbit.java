@@ -1,6 +1,5 @@
 import java.util.List;
 import java.util.Random;
-import java.util.Iterator;
 
 /**
  * A simple model of a rabbit.
@@ -13,16 +12,18 @@ public class Rabbit extends Animal
     // Characteristics shared by all rabbits (class variables).
 
     // The age at which a rabbit can start to breed.
-    private static final int BREEDING_AGE = 5;
+    static final int BREEDING_AGE = 5;
     // The age to which a rabbit can live.
-    private static final int MAX_AGE = 40;
+    static final int MAX_AGE = 40;
     // The likelihood of a rabbit breeding.
-    private static final double BREEDING_PROBABILITY = 0.16;
+    static final double BREEDING_PROBABILITY = 0.16;
     // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 4;
+    static final int MAX_LITTER_SIZE = 4;
     // The food value of a single plant. In effect, this is the
     // number of steps a rabbit can go before it has to eat again.
-    private static final int PLANT_FOOD_VALUE = 10;
+    static final int PLANT_FOOD_VALUE = 10;
+    // The food level of a rabbit when it is created.
+    static final int INITIAL_FOOD_LEVEL = 30;
     
     // Individual characteristics (instance fields).
     // The rabbit's age.
@@ -41,13 +42,25 @@ public class Rabbit extends Animal
     public Rabbit(boolean randomAge, Field field, Location location)
     {
         super(field, location);
-        foodLevel = 30;
+        foodLevel = INITIAL_FOOD_LEVEL;
         age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            age = getRandom().nextInt(MAX_AGE);
         }
+        recordBirth();
     }
     
+    /**
+     * Rabbits only act during sunny or foggy days.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     * @return true if rabbits act at the given time and weather.
+     */
+    static boolean canAct(Time time, Weather weather)
+    {
+        return time.isDay() && (weather.isSunny() || weather.isFoggy());
+    }
+
     /**
      * This is what the rabbit does most of the time: it checks if
      * the conditions are optimal to act, it looks for food (plants).
@@ -60,18 +73,20 @@ public class Rabbit extends Animal
     public void act(List<Animal> newRabbits, Time time, Weather weather)
     {
         //Rabbits act during the day despite it is sunny or foggy.
-        if (time.isDay() && (weather.isSunny() || weather.isFoggy())){
+        if (canAct(time, weather)){
             incrementAge();
             incrementHunger();
-            // They infect in case they are infected
-            if(isAlive() && isInfected()) infect();
             if(isAlive()) {
-                giveBirth(newRabbits);            
+                // Every step of the act works from one look at the neighbours.
+                Surroundings around = lookAround();
+                // They infect in case they are infected
+                if(isInfected()) infect(around);
+                giveBirth(newRabbits, around);            
                 // Move towards a source of food if found.
-                Location newLocation = findFood();
+                Location newLocation = findFood(around);
                 if(newLocation == null) { 
                     // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
+                    newLocation = around.takeFreeLocation(Species.RABBIT);
                 }
                 // See if it was possible to move.
                 if(newLocation != null) {
@@ -115,22 +130,20 @@ public class Rabbit extends Animal
     /**
      * Look for plants adjacent to the current location.
      * Only the first live plant is eaten.
+     * @param around The snapshot of the rabbit's neighbourhood.
      * @return Where food was found, or null if it wasn't.
      */
-    private Location findFood()
+    private Location findFood(Surroundings around)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Plant) {
-                Plant plant = (Plant) animal;
+        for(int i = 0; i < around.size(); i++) {
+            byte species = around.getSpecies(i);
+            if(species == Species.PLANT) {
+                Plant plant = (Plant) around.getOccupant(i);
                 if(plant.isAlive()) { 
                     plant.setDead();
+                    around.setSpecies(i, Species.EMPTY);
                     foodLevel = PLANT_FOOD_VALUE;
-                    return where;
+                    return around.getLocation(i);
                 }
             }
         }
@@ -141,16 +154,18 @@ public class Rabbit extends Animal
      * Check whether or not this rabbit is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newRabbits A list to return newly born rabbits.
+     * @param around The snapshot of the rabbit's neighbourhood.
      */
-    private void giveBirth(List<Animal> newRabbits)
+    private void giveBirth(List<Animal> newRabbits, Surroundings around)
     {
-        // New rabbits are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New rabbits are born into free adjacent locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
+        for(int b = 0; b < births; b++) {
+            Location loc = around.takeFreeLocation(Species.RABBIT);
+            if(loc == null) {
+                break;
+            }
             Rabbit young = new Rabbit(false, field, loc);
             newRabbits.add(young);
             if (infected) {
@@ -167,8 +182,8 @@ public class Rabbit extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && getRandom().nextDouble() <= BREEDING_PROBABILITY) {
+            births = getRandom().nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -181,4 +196,32 @@ public class Rabbit extends Animal
     {
         return age >= BREEDING_AGE;
     }
+
+    /**
+     * @return The rabbit's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * @return The rabbit's food level.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Set the rabbit's age and food level.
+     * @param age The age.
+     * @param foodLevel The food level.
+     * @param male Ignored, as rabbits have no gender.
+     */
+    void restore(int age, int foodLevel, boolean male)
+    {
+        this.age = age;
+        this.foodLevel = foodLevel;
+    }
 }
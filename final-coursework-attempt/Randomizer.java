@@ -1,52 +1,65 @@
-import java.util.Random;
-
-/**
- * Provide control over the randomization of the simulation. By using the shared, fixed-seed 
- * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
- * 'useShared' to false to get different random behaviour every time.
- * 
- * @author David J. Barnes and Michael Kölling
- * @version 2016.02.29
- */
-public class Randomizer
-{
-    // The default seed for control of randomization.
-    private static final int SEED = 1111;
-    // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
-    // Determine whether a shared random generator is to be provided.
-    private static final boolean useShared = true;
-
-    /**
-     * Constructor for objects of class Randomizer
-     */
-    public Randomizer()
-    {
-    }
-
-    /**
-     * Provide a random generator.
-     * @return A random object.
-     */
-    public static Random getRandom()
-    {
-        if(useShared) {
-            return rand;
-        }
-        else {
-            return new Random();
-        }
-    }
-    
-    /**
-     * Reset the randomization.
-     * This will have no effect if randomization is not through
-     * a shared Random generator.
-     */
-    public static void reset()
-    {
-        if(useShared) {
-            rand.setSeed(SEED);
-        }
-    }
-}
+import java.util.Random;
+
+/**
+ * Provide control over the randomization of the simulation. By using the shared, fixed-seed 
+ * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
+ * 'useShared' to false to get different random behaviour every time.
+ * 
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class Randomizer
+{
+    // The default seed for control of randomization.
+    private static final int SEED = 1111;
+    // A shared Random object, if required.
+    private static final Random rand = new RestorableRandom(SEED);
+    // Determine whether a shared random generator is to be provided.
+    private static final boolean useShared = true;
+
+    /**
+     * Constructor for objects of class Randomizer
+     */
+    public Randomizer()
+    {
+    }
+
+    /**
+     * Provide a random generator.
+     * @return A random object.
+     */
+    public static Random getRandom()
+    {
+        if(useShared) {
+            return rand;
+        }
+        else {
+            return new RestorableRandom(System.nanoTime());
+        }
+    }
+    
+    /**
+     * Provide a random generator of its own for one simulation.
+     * Simulations given different generators do not interfere with
+     * each other, and a simulation always behaves the same way for
+     * the same seed.
+     * @param seed The seed of the generator.
+     * @return A new random object.
+     */
+    public static Random getRandom(long seed)
+    {
+        return new RestorableRandom(seed);
+    }
+    
+    /**
+     * Reset the randomization.
+     * This will have no effect if randomization is not through
+     * a shared Random generator.
+     */
+    public static void reset()
+    {
+        if(useShared) {
+            rand.setSeed(SEED);
+        }
+    }
+}
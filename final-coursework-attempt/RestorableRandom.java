@@ -0,0 +1,81 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A random number generator giving exactly the same numbers as
+ * java.util.Random for the same seed, whose state can be read and
+ * set again. This lets a checkpoint of a simulation carry on from
+ * the same point of its random numbers.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class RestorableRandom extends Random
+{
+    // The version of the serialized form.
+    private static final long serialVersionUID = 1L;
+    // The constants of the linear congruential generator of Random.
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // The 48-bit state of the generator.
+    private AtomicLong state;
+
+    /**
+     * Create a generator with the given seed.
+     * @param seed The seed.
+     */
+    public RestorableRandom(long seed)
+    {
+        super(seed);
+    }
+
+    /**
+     * Set the seed, as Random.setSeed does.
+     * @param seed The seed.
+     */
+    @Override
+    public synchronized void setSeed(long seed)
+    {
+        super.setSeed(seed);
+        // Called by the constructor of Random, before the field is set.
+        if(state == null) {
+            state = new AtomicLong();
+        }
+        state.set((seed ^ MULTIPLIER) & MASK);
+    }
+
+    /**
+     * @return The state of the generator.
+     */
+    public long getState()
+    {
+        return state.get();
+    }
+
+    /**
+     * Carry on from a state given by getState.
+     * @param newState The state.
+     */
+    public void setState(long newState)
+    {
+        state.set(newState & MASK);
+    }
+
+    /**
+     * Generate the next random bits, as Random.next does.
+     * @param bits The number of bits.
+     * @return The bits.
+     */
+    @Override
+    protected int next(int bits)
+    {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = (current * MULTIPLIER + ADDEND) & MASK;
+        } while(!state.compareAndSet(current, next));
+        return (int) (next >>> (48 - bits));
+    }
+}
@@ -1,17 +1,42 @@
 import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
  * containing rabbits and foxes.
  * 
+ * The simulator reports each step to its observers. By default it
+ * creates a graphical view as its observer, but it can also run
+ * headless, with no view at all, at full speed.
+ * 
  * @author Alvaro Moreno and Emil Cechelt
  */
 public class Simulator
 {
+    /**
+     * The ways in which the participants of a simulation can be
+     * represented and stepped.
+     */
+    public enum Engine
+    {
+        // One object per plant and animal, bucketed by species.
+        OBJECTS,
+        // Primitive arrays indexed by entity id, kept in an EntityStore.
+        ENTITY_STORE,
+        // The EntityStore driven by timestamped events, skipping the
+        // steps in which no species acts.
+        EVENTS,
+        // One object per plant and animal, stepped in parallel tiles.
+        TILES,
+        // The EntityStore stepped by an IntentPipeline, giving the same
+        // results whatever the number of threads.
+        TWO_PHASE
+    }
+
     // Constants representing configuration information for the simulation.
     // The default width for the grid.
     private static final int DEFAULT_WIDTH = 180;
@@ -29,21 +54,66 @@ public class Simulator
     private static final double MOUSE_CREATION_PROBABILITY = 0.08;
     // The probability that a plant will be created in any given grid position.
     private static final double PLANT_CREATION_PROBABILITY = 0.02;
+    // Whether the field stores its occupants in the flat layout.
+    private static final boolean FLAT_FIELD = true;
+    // The default pace of a simulation with a graphical view.
+    private static final double DEFAULT_STEPS_PER_SECOND = 1000.0 / 60;
+    // The default number of frames shown per second in FIXED_FRAME_RATE mode.
+    private static final double DEFAULT_FRAMES_PER_SECOND = 30;
+    // The default width and depth of a tile of the TILES engine.
+    private static final int DEFAULT_TILE_SIZE = 32;
+    // The order in which the species are tried for each cell when
+    // populating the field, and their creation probabilities.
+    private static final byte[] CREATION_ORDER = {
+        Species.FOX, Species.RABBIT, Species.WOLF, Species.DEER, Species.MOUSE, Species.PLANT
+    };
+    private static final double[] CREATION_PROBABILITIES = {
+        FOX_CREATION_PROBABILITY, RABBIT_CREATION_PROBABILITY, WOLF_CREATION_PROBABILITY,
+        DEER_CREATION_PROBABILITY, MOUSE_CREATION_PROBABILITY, PLANT_CREATION_PROBABILITY
+    };
     
-    // List of plants in the field.
-    private List<Plant> plants;
-    // List of animals in the field.
-    private List<Animal> animals;
+    // The plants and animals in the field, bucketed by species.
+    private ActivityScheduler scheduler;
     // The current state of the field.
     private Field field;
     // The current step of the simulation.
     private int step;
-    // A graphical view of the simulation.
-    private SimulatorView view;
-    
-    
-    private static final Time time = new Time();
-    private static final Weather weather = new Weather();
+    // The observers told about each step, including any graphical view.
+    private List<SimulatorObserver> observers;
+    // Controls how fast the simulation runs.
+    private Pacer pacer;
+    // Statistics computed from the field's population counts.
+    private FieldStats stats;
+    // The random number generator of this simulation.
+    private Random rand;
+    // The time of the day and the weather of this simulation.
+    private Time time;
+    private Weather weather;
+    // How the participants are represented and stepped.
+    private Engine engine;
+    // The participants, when the ENTITY_STORE, EVENTS or TWO_PHASE engine is used.
+    private EntityStore store;
+    // The events driving the store, when the EVENTS engine is used.
+    private EventEngine events;
+    // The parallel tiles, when the TILES engine is used.
+    private TileEngine tiles;
+    // The intent and commit phases, when the TWO_PHASE engine is used.
+    private IntentPipeline pipeline;
+    // The tile size of the TILES engine, and the parallelism of it
+    // and of the TWO_PHASE engine.
+    private int tileSize;
+    private int parallelism;
+    // Chooses the starting species of each cell.
+    private Populator populator;
+    // Writes checkpoints in the background, or null if none are taken.
+    private CheckpointWriter checkpointWriter;
+    // Where checkpoints are written, and every how many steps.
+    private Path checkpointPath;
+    private int checkpointInterval;
+    // Records the changes made at each step, or null if none are recorded.
+    private Journal journal;
+    // Records or verifies the hash of the field at each step, or null.
+    private HashTrace hashTrace;
     
     /**
      * Construct a simulation field with default size.
@@ -59,6 +129,47 @@ public class Simulator
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width)
+    {
+        this(depth, width, false);
+    }
+    
+    /**
+     * Create a simulation field with the given size, optionally
+     * without a graphical view. A headless simulation has no
+     * observers until some are added, and its pacer lets it run
+     * as fast as possible.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless Whether to run without a graphical view.
+     */
+    public Simulator(int depth, int width, boolean headless)
+    {
+        this(depth, width, headless, Randomizer.getRandom());
+    }
+    
+    /**
+     * Create a simulation with its own random number generator,
+     * time and weather. Any number of such simulations can run
+     * side by side, on different threads, without interfering, and
+     * each behaves exactly the same way for the same seed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless Whether to run without a graphical view.
+     * @param seed The seed of the simulation's random numbers.
+     */
+    public Simulator(int depth, int width, boolean headless, long seed)
+    {
+        this(depth, width, headless, Randomizer.getRandom(seed));
+    }
+    
+    /**
+     * Create a simulation drawing from the given random numbers.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless Whether to run without a graphical view.
+     * @param rand The random number generator of the simulation.
+     */
+    private Simulator(int depth, int width, boolean headless, Random rand)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
@@ -67,18 +178,35 @@ public class Simulator
             width = DEFAULT_WIDTH;
         }
         
-        animals = new ArrayList<>();
-        plants = new ArrayList<>();
-        field = new Field(depth, width);
+        scheduler = new ActivityScheduler();
+        this.rand = rand;
+        time = new Time();
+        weather = new Weather(rand);
+        field = new Field(depth, width, FLAT_FIELD, rand);
+        observers = new ArrayList<>();
+        stats = new FieldStats();
+        engine = Engine.OBJECTS;
+        tileSize = DEFAULT_TILE_SIZE;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        populator = new Populator(CREATION_ORDER, CREATION_PROBABILITIES, parallelism);
+        if(headless) {
+            pacer = new Pacer(Pacer.Mode.MAX_THROUGHPUT, DEFAULT_STEPS_PER_SECOND, DEFAULT_FRAMES_PER_SECOND);
+        }
+        else {
+            pacer = new Pacer(Pacer.Mode.TARGET_RATE, DEFAULT_STEPS_PER_SECOND, DEFAULT_FRAMES_PER_SECOND);
+        }
 
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width);
-        view.setColor(Rabbit.class, Color.ORANGE);
-        view.setColor(Fox.class, Color.BLUE);
-        view.setColor(Wolf.class,Color.GRAY);
-        view.setColor(Deer.class, Color.RED);
-        view.setColor(Mouse.class, Color.PINK);
-        view.setColor(Plant.class, Color.GREEN);
+        if(!headless) {
+            // Create a view of the state of each location in the field.
+            SimulatorView view = new SimulatorView(depth, width);
+            view.setColor(Rabbit.class, Color.ORANGE);
+            view.setColor(Fox.class, Color.BLUE);
+            view.setColor(Wolf.class,Color.GRAY);
+            view.setColor(Deer.class, Color.RED);
+            view.setColor(Mouse.class, Color.PINK);
+            view.setColor(Plant.class, Color.GREEN);
+            observers.add(view);
+        }
         
         // Setup a valid starting point.
         reset();
@@ -96,13 +224,30 @@ public class Simulator
     /**
      * Run the simulation from its current state for the given number of steps.
      * Stop before the given number of steps if it ceases to be viable.
+     * The pacer decides how fast the steps are taken and which of
+     * them are shown to the observers. The run also stops if the
+     * thread running it is interrupted while waiting for a step.
      * @param numSteps The number of steps to run for.
      */
     public void simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
-            simulateOneStep();
-            delay(60);   // uncomment this to run more slowly
+        boolean shown = true;
+        for(int step = 1; step <= numSteps && isViable(); step++) {
+            if(!pacer.awaitStep()) {
+                break;
+            }
+            advance();
+            endJournalStep();
+            traceHash();
+            checkpointIfDue();
+            shown = pacer.isFrameDue();
+            if(shown) {
+                notifyObservers();
+            }
+        }
+        if(!shown) {
+            // Always show where the run ended.
+            notifyObservers();
         }
     }
     
@@ -112,43 +257,49 @@ public class Simulator
      * fox and rabbit.
      */
     public void simulateOneStep()
+    {
+        advance();
+        endJournalStep();
+        traceHash();
+        checkpointIfDue();
+        // We show the step number, each animal, the time of the day and the weather.
+        notifyObservers();
+    }
+    
+    /**
+     * Advance the simulation by a single step without telling
+     * the observers.
+     */
+    private void advance()
     {
         step++;
         // Sets the time of the day depending on the step number.
         time.setTime(step);
+        if(engine == Engine.EVENTS) {
+            // Only the steps in which some species acts are processed.
+            events.advanceTo(step);
+            weather = events.getWeather();
+            return;
+        }
+        
         // Sets the weather every step.
         weather.setWeather();
         
-        // Provide space for newborn plants.
-        List<Plant> newPlants = new ArrayList<>(); 
-        // Provide space for newborn animals.
-        List<Animal> newAnimals = new ArrayList<>();
-        
-        // Let all plants act.
-        for(Iterator<Plant> it = plants.iterator(); it.hasNext(); ) {
-            Plant plant = it.next();
-            plant.act(newPlants, time);
-            if(! plant.isAlive()) {
-                it.remove();
-            }
+        if(engine == Engine.ENTITY_STORE) {
+            store.step(time, weather);
+            return;
+        }
+        if(engine == Engine.TILES) {
+            tiles.step(time, weather, step);
+            return;
+        }
+        if(engine == Engine.TWO_PHASE) {
+            pipeline.step(time, weather, step);
+            return;
         }
         
-        // Let all animals act.
-        for(Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-            animal.act(newAnimals, time, weather);
-            if(! animal.isAlive()) {
-                it.remove();
-            }
-        }
-               
-        // Add the newly born animals to the main lists.
-        animals.addAll(newAnimals);
-        // Add the newly born plants to the main lists.
-        plants.addAll(newPlants);
-
-        // We show the step number, each animal, the time of the day and the weather.
-        view.showStatus(step, field, time.showTime(), weather.showWeather());
+        // Only the species that can act at this time and weather act.
+        scheduler.step(time, weather);
     }
         
     /**
@@ -156,78 +307,682 @@ public class Simulator
      */
     public void reset()
     {
+        stopJournal();
+        hashTrace = null;
         step = 0;
-        animals.clear();
-        plants.clear();
+        scheduler.clear();
+        if(store != null) {
+            store.clear();
+        }
         populate();
-        
-        // We set the weather randomly.
-        weather.setWeather();
+        if(engine == Engine.EVENTS) {
+            events.reset(step);
+            weather = events.getWeather();
+        }
+        else {
+            // We set the weather randomly.
+            weather.setWeather();
+        }
         // We set the daytime on day.
         time.setTime(step);
         
         // Show the starting state in the view.
-        view.showStatus(step, field, time.showTime(), weather.showWeather());
+        notifyObservers();
     }
     
     /**
-     * Randomly populate the field with foxes and rabbits.
+     * Choose how the participants are represented and stepped.
+     * Changing the engine resets the simulation, since the
+     * participants of one engine cannot be moved to the other.
+     * @param engine The engine to use.
      */
-    private void populate()
+    public void setEngine(Engine engine)
     {
-        Random rand = Randomizer.getRandom();
-        field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                
-                if(rand.nextDouble() <= FOX_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Fox fox = new Fox(true, field, location);
-                    animals.add(fox);
-                }
-                else if(rand.nextDouble() <= RABBIT_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Rabbit rabbit = new Rabbit(true, field, location);
-                    animals.add(rabbit);
-                    
-                }
-                else if(rand.nextDouble() <= WOLF_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Wolf wolf = new Wolf(true, field, location);
-                    animals.add(wolf);
+        if(engine != this.engine) {
+            switchEngine(engine);
+            reset();
+        }
+    }
+    
+    /**
+     * Set up the given engine in place of the current one, without
+     * touching the participants.
+     * @param engine The engine to use.
+     */
+    private void switchEngine(Engine engine)
+    {
+        this.engine = engine;
+        // Participants kept in an EntityStore need no handles.
+        if(field.isFlat()) {
+            field.setObjectsKept(!usesStore());
+        }
+        if(usesStore() && store == null) {
+            store = new EntityStore(field);
+        }
+        if(engine == Engine.EVENTS) {
+            // The weather is drawn ahead from its own random numbers.
+            events = new EventEngine(store, field, new Random(rand.nextLong()));
+            weather = events.getWeather();
+        }
+        else if(events != null) {
+            events = null;
+            weather = new Weather(rand);
+        }
+        if(engine == Engine.TILES) {
+            tiles = new TileEngine(field, scheduler, tileSize, rand.nextLong(), parallelism);
+        }
+        else if(tiles != null) {
+            tiles.shutdown();
+            tiles = null;
+        }
+        if(engine == Engine.TWO_PHASE) {
+            pipeline = new IntentPipeline(store, field, rand.nextLong(), parallelism);
+        }
+        else if(pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+    
+    /**
+     * Save the whole state of the simulation to a checkpoint file:
+     * the engine, the step, the weather, the state of the random
+     * numbers and every participant. Not available with the EVENTS
+     * engine, whose weather is drawn ahead.
+     * @param path Where to write the checkpoint.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveCheckpoint(Path path) throws IOException
+    {
+        checkCheckpointable();
+        try(Checkpoint.Writer out = new Checkpoint.Writer(path)) {
+            capture(out);
+        }
+    }
+    
+    /**
+     * Write the whole state of the simulation to a sink, as
+     * saveCheckpoint does.
+     * @param out Where to write the state.
+     * @throws IOException If the sink cannot be written to.
+     */
+    void capture(Checkpoint.Sink out) throws IOException
+    {
+        checkCheckpointable();
+        // Dead participants of species that have not acted since they
+        // died are still listed; they would do nothing more.
+        scheduler.removeDead();
+        out.writeHeader(engine, field.getDepth(), field.getWidth(), step, weather,
+                        ((RestorableRandom) rand).getState(),
+                        getEngineSeed(), getParticipantCount());
+        if(usesStore()) {
+            for(int id = 0; id < store.getSize(); id++) {
+                out.writeParticipant(store.getSpecies(id), store.getCell(id), store.getAge(id),
+                                     store.getFoodLevel(id), store.isMale(id), store.isInfected(id));
+            }
+        }
+        else {
+            for(Plant plant : scheduler.getPlants()) {
+                Location location = plant.getLocation();
+                out.writeParticipant(Species.PLANT, field.getIndex(location.getRow(), location.getCol()),
+                                     plant.getAge(), 0, false, false);
+            }
+            // An animal cannot throw from within forEachAnimal.
+            IOException[] failure = new IOException[1];
+            scheduler.forEachAnimal(animal -> {
+                if(failure[0] == null) {
+                    Location location = animal.getLocation();
+                    try {
+                        out.writeParticipant(Species.of(animal),
+                                             field.getIndex(location.getRow(), location.getCol()),
+                                             animal.getAge(), animal.getFoodLevel(),
+                                             animal.isMale(), animal.isInfected());
+                    }
+                    catch(IOException e) {
+                        failure[0] = e;
+                    }
                 }
-                else if(rand.nextDouble() <= DEER_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Deer deer = new Deer(true, field, location, true);
-                    animals.add(deer);
-                 
+            });
+            if(failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+    
+    /**
+     * Make sure the state of the simulation can be saved.
+     */
+    private void checkCheckpointable()
+    {
+        if(engine == Engine.EVENTS) {
+            throw new IllegalStateException("The EVENTS engine cannot be checkpointed");
+        }
+        if(!(rand instanceof RestorableRandom)) {
+            throw new IllegalStateException("The random numbers of this simulation cannot be saved");
+        }
+    }
+    
+    /**
+     * @return The seed of the TILES or TWO_PHASE engine, or 0 for
+     *         engines with no random numbers of their own.
+     */
+    private long getEngineSeed()
+    {
+        if(tiles != null) {
+            return tiles.getSeed();
+        }
+        return pipeline != null ? pipeline.getSeed() : 0;
+    }
+    
+    /**
+     * Take checkpoints regularly as the simulation runs. Each one is
+     * copied in memory and written by the given writer in the
+     * background, replacing the one before. If one cannot be
+     * written, the step taking the next checkpoint fails with the
+     * UncheckedIOException thrown by the writer.
+     * @param writer The writer, or null to stop taking checkpoints.
+     * @param path Where to write the checkpoints.
+     * @param interval The number of steps between checkpoints.
+     */
+    public void setCheckpointing(CheckpointWriter writer, Path path, int interval)
+    {
+        if(writer != null) {
+            if(interval < 1) {
+                throw new IllegalArgumentException("Checkpoints must be at least one step apart");
+            }
+            checkCheckpointable();
+        }
+        checkpointWriter = writer;
+        checkpointPath = path;
+        checkpointInterval = interval;
+    }
+    
+    /**
+     * Hand a checkpoint to the writer if one is due at this step.
+     */
+    private void checkpointIfDue()
+    {
+        if(checkpointWriter != null && step % checkpointInterval == 0) {
+            checkpointWriter.checkpoint(this, checkpointPath);
+        }
+    }
+    
+    /**
+     * Record every birth, death, move and infection from now on in a
+     * journal, step by step. Along with a checkpoint taken at this or
+     * any later step, the journal lets JournalReplay work out the
+     * occupants of the field at any step after it. The journal ends
+     * when stopJournal is called, or when the simulation is reset or
+     * restored. Not available with the EVENTS engine, which cannot be
+     * checkpointed.
+     * @param path Where to write the journal.
+     * @throws IOException If the file cannot be created.
+     */
+    public void startJournal(Path path) throws IOException
+    {
+        checkCheckpointable();
+        stopJournal();
+        journal = new Journal(path, field.getDepth(), field.getWidth(), step);
+        field.setJournal(journal);
+    }
+    
+    /**
+     * Stop recording changes, writing out the journal.
+     * @throws IllegalStateException If the journal cannot be written.
+     */
+    public void stopJournal()
+    {
+        if(journal != null) {
+            field.setJournal(null);
+            try {
+                journal.close();
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Could not write the journal", e);
+            }
+            finally {
+                journal = null;
+            }
+        }
+    }
+    
+    /**
+     * Append the changes made in this step to the journal, if one is kept.
+     */
+    private void endJournalStep()
+    {
+        if(journal != null) {
+            try {
+                journal.endStep(step);
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Could not write the journal", e);
+            }
+        }
+    }
+    
+    /**
+     * Return the StateHash of the field, kept up to date as the
+     * simulation runs. Two runs that have followed the same path
+     * have the same hash at each step.
+     * @return The hash.
+     */
+    public long getStateHash()
+    {
+        return field.getHash();
+    }
+    
+    /**
+     * Work out the StateHash of the field from scratch, from every
+     * participant, as a check of the one kept up to date. Not
+     * available with the EVENTS engine.
+     * @return The hash.
+     */
+    public long computeStateHash()
+    {
+        StateHash hash = new StateHash();
+        try {
+            capture(hash);
+        }
+        catch(IOException e) {
+            // A StateHash does no input or output.
+            throw new IllegalStateException(e);
+        }
+        return hash.getHash();
+    }
+    
+    /**
+     * Hand the hash of the field to a trace at every step from now
+     * on, starting with the current one, to record a reference run
+     * or to compare this run with one. The trace is let go of when
+     * the simulation is reset or restored.
+     * @param trace The trace, or null to stop tracing.
+     * @throws IllegalStateException If the hash cannot be recorded.
+     */
+    public void setHashTrace(HashTrace trace)
+    {
+        hashTrace = trace;
+        traceHash();
+    }
+    
+    /**
+     * Hand the hash of the field at this step to the trace, if there is one.
+     */
+    private void traceHash()
+    {
+        if(hashTrace != null) {
+            try {
+                hashTrace.step(step, field.getHash());
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Could not record the hash", e);
+            }
+        }
+    }
+    
+    /**
+     * Replace the state of the simulation with that saved in a
+     * checkpoint file, switching to the engine it was saved with.
+     * The simulation then carries on exactly as the saved one would
+     * have. The whole file is read and checked first, so a file that
+     * cannot be restored leaves the simulation as it was.
+     * @param path Where to read the checkpoint from.
+     * @throws IOException If the file cannot be read or is not a
+     *                     valid checkpoint.
+     */
+    public void restoreCheckpoint(Path path) throws IOException
+    {
+        if(!(rand instanceof RestorableRandom)) {
+            throw new IllegalStateException("The random numbers of this simulation cannot be restored");
+        }
+        Engine savedEngine;
+        long randomState, engineSeed;
+        int savedStep;
+        Weather savedWeather = new Weather(rand);
+        byte[] species;
+        int[] cells, ages, foodLevels;
+        boolean[] males, infected;
+        try(Checkpoint.Reader in = new Checkpoint.Reader(path)) {
+            if(in.getDepth() != field.getDepth() || in.getWidth() != field.getWidth()) {
+                throw new IllegalArgumentException("The checkpoint is of a " + in.getDepth() + "x" +
+                                                   in.getWidth() + " field");
+            }
+            int cellCount = field.getDepth() * field.getWidth();
+            int count = in.getCount();
+            if(count < 0 || count > cellCount) {
+                throw new IOException("Checkpoint lists " + count + " participants for " +
+                                      cellCount + " cells");
+            }
+            savedEngine = in.getEngine();
+            randomState = in.getRandomState();
+            engineSeed = in.getEngineSeed();
+            savedStep = in.getStep();
+            in.restoreWeather(savedWeather);
+            species = new byte[count];
+            cells = new int[count];
+            ages = new int[count];
+            foodLevels = new int[count];
+            males = new boolean[count];
+            infected = new boolean[count];
+            boolean[] taken = new boolean[cellCount];
+            for(int i = 0; i < count; i++) {
+                in.nextParticipant();
+                species[i] = in.getSpecies();
+                cells[i] = in.getCell();
+                if(species[i] != Species.PLANT && !Species.isAnimal(species[i])) {
+                    throw new IOException("Unknown species " + species[i] + " in checkpoint");
                 }
-                else if(rand.nextDouble() <= MOUSE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Mouse mouse = new Mouse(true, field, location, true);
-                    animals.add(mouse);
+                if(cells[i] < 0 || cells[i] >= cellCount) {
+                    throw new IOException("Participant outside the field in checkpoint: cell " + cells[i]);
                 }
-                else if(rand.nextDouble() <= PLANT_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Plant plant = new Plant(true, field, location);
-                    plants.add(plant);
+                if(taken[cells[i]]) {
+                    throw new IOException("Two participants share cell " + cells[i] + " in checkpoint");
                 }
-                // else leave the location empty.
+                taken[cells[i]] = true;
+                ages[i] = in.getAge();
+                foodLevels[i] = in.getFoodLevel();
+                males[i] = in.isMale();
+                infected[i] = in.isInfected();
             }
         }
+
+        // The checkpoint is sound; only now is the simulation changed.
+        stopJournal();
+        hashTrace = null;
+        if(savedEngine != engine) {
+            switchEngine(savedEngine);
+        }
+        ((RestorableRandom) rand).setState(randomState);
+        if(tiles != null) {
+            tiles.shutdown();
+            tiles = new TileEngine(field, scheduler, tileSize, engineSeed, parallelism);
+        }
+        if(pipeline != null) {
+            pipeline.shutdown();
+            pipeline = new IntentPipeline(store, field, engineSeed, parallelism);
+        }
+        step = savedStep;
+        time.setTime(step);
+        weather.setWeather(savedWeather.isRainy(), savedWeather.isFoggy());
+
+        field.clear();
+        scheduler.clear();
+        if(store != null) {
+            store.clear();
+        }
+        for(int i = 0; i < species.length; i++) {
+            if(usesStore()) {
+                store.restore(species[i], cells[i], ages[i], foodLevels[i], males[i], infected[i]);
+            }
+            else {
+                restore(species[i], cells[i], ages[i], foodLevels[i], males[i], infected[i]);
+            }
+        }
+        // Animals are born male and given their gender afterwards.
+        field.setHash(computeStateHash());
+        notifyObservers();
     }
     
     /**
-     * Pause for a given time.
-     * @param millisec  The time to pause for, in milliseconds
+     * Create the object for a participant read from a checkpoint.
+     * @param code Its species code, a plant or an animal.
+     * @param cell The index of its cell.
+     * @param age Its age.
+     * @param foodLevel Its food level.
+     * @param male Whether it is male.
+     * @param infected Whether it is infected.
      */
-    private void delay(int millisec)
+    private void restore(byte code, int cell, int age, int foodLevel, boolean male, boolean infected)
     {
-        try {
-            Thread.sleep(millisec);
+        int width = field.getWidth();
+        Location location = new Location(cell / width, cell % width);
+        if(code == Species.PLANT) {
+            Plant plant = new Plant(false, field, location);
+            plant.restore(age);
+            scheduler.add(plant);
+            return;
+        }
+        Animal animal;
+        switch(code) {
+            case Species.FOX:
+                animal = new Fox(false, field, location);
+                break;
+            case Species.RABBIT:
+                animal = new Rabbit(false, field, location);
+                break;
+            case Species.WOLF:
+                animal = new Wolf(false, field, location);
+                break;
+            case Species.DEER:
+                animal = new Deer(false, field, location, false);
+                break;
+            case Species.MOUSE:
+                animal = new Mouse(false, field, location, false);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown species " + code + " in checkpoint");
+        }
+        animal.restore(age, foodLevel, male);
+        if(infected) {
+            animal.setInfected();
+        }
+        scheduler.add(animal);
+    }
+    
+    /**
+     * Set how the TILES engine cuts up the field and how many tiles
+     * it runs at the same time, which is also the number of threads
+     * of the TWO_PHASE engine and of populating the field. This does
+     * not reset the simulation.
+     * @param tileSize The width and depth of a tile, in cells, at
+     *                 least TileEngine.MIN_TILE_SIZE.
+     * @param parallelism The number of tiles run at the same time.
+     */
+    public void setTiling(int tileSize, int parallelism)
+    {
+        if(tileSize < TileEngine.MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + TileEngine.MIN_TILE_SIZE + " cells wide");
+        }
+        this.tileSize = tileSize;
+        this.parallelism = parallelism;
+        populator = new Populator(CREATION_ORDER, CREATION_PROBABILITIES, parallelism);
+        if(tiles != null) {
+            tiles.shutdown();
+            tiles = new TileEngine(field, scheduler, tileSize, tiles.getSeed(), parallelism);
+        }
+        if(pipeline != null) {
+            pipeline.shutdown();
+            pipeline = new IntentPipeline(store, field, pipeline.getSeed(), parallelism);
+        }
+    }
+    
+    /**
+     * @return How the participants are represented and stepped.
+     */
+    public Engine getEngine()
+    {
+        return engine;
+    }
+    
+    /**
+     * @return The scheduler holding the participants of the OBJECTS engine.
+     */
+    public ActivityScheduler getScheduler()
+    {
+        return scheduler;
+    }
+    
+    /**
+     * @return The number of plants and animals being simulated.
+     */
+    public int getParticipantCount()
+    {
+        if(usesStore()) {
+            return store.getSize();
+        }
+        return scheduler.size();
+    }
+    
+    /**
+     * Register an observer to be told about every following step.
+     * @param observer The observer to add.
+     */
+    public void addObserver(SimulatorObserver observer)
+    {
+        observers.add(observer);
+    }
+    
+    /**
+     * Stop telling an observer about the simulation.
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(SimulatorObserver observer)
+    {
+        observers.remove(observer);
+    }
+    
+    /**
+     * Return the pacer, through which the pace of the simulation
+     * can be changed, and the simulation paused, single-stepped
+     * and resumed, while it runs.
+     * @return The simulation's pacer.
+     */
+    public Pacer getPacer()
+    {
+        return pacer;
+    }
+    
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        return stats.isViable(field);
+    }
+    
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+    
+    /**
+     * @return The time of the day of the current step.
+     */
+    public Time getTime()
+    {
+        return time;
+    }
+    
+    /**
+     * @return The weather of the current step.
+     */
+    public Weather getWeather()
+    {
+        return weather;
+    }
+    
+    /**
+     * @return The field being simulated.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+    
+    /**
+     * Return the number of participants of one species.
+     * @param species The species code, see Species.
+     * @return How many of that species are in the field.
+     */
+    public int getPopulation(int species)
+    {
+        return field.getCount(species);
+    }
+    
+    /**
+     * @return A string describing the population of the field.
+     */
+    public String getPopulationDetails()
+    {
+        return stats.getPopulationDetails(field);
+    }
+    
+    /**
+     * @return true if the current engine keeps the participants in
+     *         the EntityStore rather than as objects.
+     */
+    private boolean usesStore()
+    {
+        return engine == Engine.ENTITY_STORE || engine == Engine.EVENTS || engine == Engine.TWO_PHASE;
+    }
+    
+    /**
+     * Tell every observer about the current state of the simulation.
+     */
+    private void notifyObservers()
+    {
+        for(SimulatorObserver observer : observers) {
+            observer.showStatus(step, field, time.showTime(), weather.showWeather());
         }
-        catch (InterruptedException ie) {
-            // wake up
+    }
+    
+    /**
+     * Randomly populate the field with plants and animals. The species
+     * of the cells are chosen in parallel tiles, and the participants
+     * are then created in the order of the cells.
+     */
+    private void populate()
+    {
+        field.clear();
+        byte[] chosen = populator.choose(field.getDepth(), field.getWidth(), new CounterRandom(rand.nextLong()));
+        if(usesStore()) {
+            store.spawnAll(chosen);
+            return;
+        }
+        int width = field.getWidth();
+        for(int index = 0; index < chosen.length; index++) {
+            if(chosen[index] != Species.EMPTY) {
+                create(chosen[index], index / width, index % width);
+            }
+        }
+    }
+    
+    /**
+     * Create a plant or animal object of random age in the given
+     * cell, and schedule it. Engines keeping participants in an
+     * EntityStore spawn them there instead.
+     * @param species The species code of the participant.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    private void create(byte species, int row, int col)
+    {
+        Location location = new Location(row, col);
+        switch(species) {
+            case Species.FOX:
+                scheduler.add(new Fox(true, field, location));
+                break;
+            case Species.RABBIT:
+                scheduler.add(new Rabbit(true, field, location));
+                break;
+            case Species.WOLF:
+                scheduler.add(new Wolf(true, field, location));
+                break;
+            case Species.DEER:
+                scheduler.add(new Deer(true, field, location, true));
+                break;
+            case Species.MOUSE:
+                scheduler.add(new Mouse(true, field, location, true));
+                break;
+            case Species.PLANT:
+                scheduler.add(new Plant(true, field, location));
+                break;
+            default:
+                break;
         }
     }
 }
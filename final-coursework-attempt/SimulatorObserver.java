@@ -0,0 +1,18 @@
+/**
+ * An observer of a simulation. The simulator reports its state to
+ * every registered observer after each step. The graphical view is
+ * one observer; a simulator without any observers runs headless.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public interface SimulatorObserver
+{
+    /**
+     * Show the current status of the field.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     */
+    void showStatus(int step, Field field, String time, String weather);
+}
@@ -3,18 +3,41 @@ import java.awt.event.*;
 import javax.swing.*;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A graphical view of the simulation grid.
  * The view displays a colored rectangle for each location 
  * representing its contents. It uses a default background color.
  * Colors for each type of species can be defined using the
- * setColor method.
+ * setColor method. The view is an observer of the simulator.
+ * 
+ * The simulation does not wait for the view to be painted. At each
+ * step it brings a FieldFrame up to date with what is to be shown,
+ * copying only the cells changed since that frame was last filled
+ * in, and leaves it
+ * in a mailbox with room for one frame, replacing any frame not yet
+ * shown. A timer on the Swing event thread takes the latest frame
+ * at the rate of the display and shows it, while the simulation
+ * carries on. Only the event thread touches the components and the
+ * image, so a frame is never shown half drawn. Frames are reused:
+ * at most three exist, one being filled, one waiting and one shown.
+ * 
+ * The field is shown through a viewport, which the mouse wheel zooms
+ * about the pointer, dragging pans, and a double click fits to the
+ * whole field again. Only the cells inside it are read and drawn, from
+ * cached tiles of cells; zoomed out below a pixel per cell, a field
+ * with more cells than the screen has pixels is shown at a lower
+ * level of detail, each pixel coloured from the counts of the cells
+ * it covers, kept by a DensityRenderer. A new frame repaints only
+ * the part of the view holding the cells it changed.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
-public class SimulatorView extends JFrame
+public class SimulatorView extends JFrame implements SimulatorObserver
 {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
@@ -22,18 +45,38 @@ public class SimulatorView extends JFrame
     // Color used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
 
+    // Color used beyond the edges of a field shown at a lower level of detail.
+    private static final Color OUTSIDE_COLOR = Color.darkGray;
+
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
     private final String CLIMATE_PREFIX = "Climate: ";
     private final String DAY_PREFIX = "Day: ";
+    // The time between checks for a new frame, in milliseconds.
+    private static final int DISPLAY_INTERVAL = 16;
     
     private JLabel stepLabel, population, infoLabel, climateLabel, dayLabel;
     private FieldView fieldView;
     
     // A map for storing colors for participants in the simulation
     private Map<Class, Color> colors;
+    // Draws the cells in view, in the same colors.
+    private TileCache tiles;
+    // Draws the field a pixel for several cells, or null if the
+    // field fits on the screen a pixel or more per cell.
+    private DensityRenderer densityRenderer;
     // A statistics object computing and storing simulation information
     private FieldStats stats;
+    // The latest frame not yet shown, or null.
+    private AtomicReference<FieldFrame> mailbox;
+    // Frames free to be filled in again.
+    private Queue<FieldFrame> freeFrames;
+    // The first frame made, whose group the others join, or null.
+    private FieldFrame firstFrame;
+    // The frame shown, or null before the first.
+    private FieldFrame shownFrame;
+    // Shows the latest frame on the event thread.
+    private Timer displayTimer;
 
     /**
      * Create a view of the given width and height.
@@ -44,6 +87,15 @@ public class SimulatorView extends JFrame
     {
         stats = new FieldStats();
         colors = new LinkedHashMap<>();
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        tiles = new TileCache(height, width, UNKNOWN_COLOR);
+        tiles.setColor(Species.EMPTY, EMPTY_COLOR);
+        if(width > screen.width || height > screen.height) {
+            densityRenderer = new DensityRenderer(height, width, UNKNOWN_COLOR, OUTSIDE_COLOR);
+            densityRenderer.setColor(Species.EMPTY, EMPTY_COLOR);
+        }
+        mailbox = new AtomicReference<>();
+        freeFrames = new ConcurrentLinkedQueue<>();
 
         setTitle("Fox and Rabbit Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -55,7 +107,7 @@ public class SimulatorView extends JFrame
         
         setLocation(100, 50);
         
-        fieldView = new FieldView(height, width);
+        fieldView = new FieldView(height, width, screen);
 
         Container contents = getContentPane();
         
@@ -71,6 +123,9 @@ public class SimulatorView extends JFrame
         contents.add(population, BorderLayout.SOUTH);
         pack();
         setVisible(true);
+        
+        displayTimer = new Timer(DISPLAY_INTERVAL, e -> showLatestFrame());
+        displayTimer.start();
     }
     
     /**
@@ -81,6 +136,10 @@ public class SimulatorView extends JFrame
     public void setColor(Class animalClass, Color color)
     {
         colors.put(animalClass, color);
+        tiles.setColor(Species.of(animalClass), color);
+        if(densityRenderer != null) {
+            densityRenderer.setColor(Species.of(animalClass), color);
+        }
     }
 
     /**
@@ -92,54 +151,70 @@ public class SimulatorView extends JFrame
     }
 
     /**
-     * @return The color to be used for a given class of animal.
+     * Show the current status of the field. Called on the thread
+     * running the simulation, this only copies the status into a
+     * frame for the event thread to show.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     * @param time The time of the day.
+     * @param weather The current weather.
      */
-    private Color getColor(Class animalClass)
+    public void showStatus(int step, Field field, String time, String weather)
     {
-        Color col = colors.get(animalClass);
-        if(col == null) {
-            // no color defined for this class
-            return UNKNOWN_COLOR;
+        FieldFrame frame = freeFrames.poll();
+        if(frame == null) {
+            if(firstFrame == null) {
+                frame = new FieldFrame(field);
+                firstFrame = frame;
+            }
+            else {
+                frame = new FieldFrame(firstFrame);
+            }
         }
-        else {
-            return col;
+        // Participants kept in an EntityStore have no object, so the
+        // cells are copied as their species codes; only those changed
+        // since the frame was last filled in.
+        frame.capture(step, field, time, weather, stats.getPopulationDetails(field));
+        FieldFrame waiting;
+        do {
+            waiting = mailbox.get();
+            if(waiting != null) {
+                // It will not be shown, so its changes must be with this one.
+                frame.merge(waiting);
+            }
+        } while(!mailbox.compareAndSet(waiting, frame));
+        if(waiting != null) {
+            freeFrames.add(waiting);
         }
     }
 
     /**
-     * Show the current status of the field.
-     * @param step Which iteration step it is.
-     * @param field The field whose status is to be displayed.
+     * Show the latest frame, if there is one not shown yet. It is kept
+     * until the next, to draw the tiles that come into view from.
+     * Runs on the event thread.
      */
-    public void showStatus(int step, Field field, String time, String weather)
+    private void showLatestFrame()
     {
+        FieldFrame frame = mailbox.getAndSet(null);
+        if(frame == null) {
+            return;
+        }
         if(!isVisible()) {
             setVisible(true);
         }
-            
-        stepLabel.setText(STEP_PREFIX + step);
-        dayLabel.setText(DAY_PREFIX + time);
-        climateLabel.setText(CLIMATE_PREFIX + weather);
-        stats.reset();
-        
-        fieldView.preparePaint();
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
-                }
-            }
+        stepLabel.setText(STEP_PREFIX + frame.getStep());
+        dayLabel.setText(DAY_PREFIX + frame.getTime());
+        climateLabel.setText(CLIMATE_PREFIX + frame.getWeather());
+        population.setText(POPULATION_PREFIX + frame.getPopulation());
+        tiles.changed(frame);
+        if(densityRenderer != null) {
+            densityRenderer.update(frame);
         }
-        stats.countFinished();
-
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
-        fieldView.repaint();
+        if(shownFrame != null) {
+            freeFrames.add(shownFrame);
+        }
+        shownFrame = frame;
+        fieldView.repaintChanged(frame);
     }
 
     /**
@@ -162,78 +237,189 @@ public class SimulatorView extends JFrame
     private class FieldView extends JPanel
     {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
+        // The most pixels across a cell when zoomed in.
+        private static final double MAX_SCALE = 64;
+        // The change of scale for one notch of the mouse wheel.
+        private static final double ZOOM_STEP = 1.25;
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        // The size of the screen.
+        private Dimension screen;
+        // The cell at the top left corner of the view, which need not
+        // be whole, and the number of pixels across a cell.
+        private double top, left, scale;
+        // Whether the view shows the whole field, as it does until it
+        // is zoomed or panned, following the size of the component.
+        private boolean fitted;
+        // Where a drag started, and the top and left then.
+        private Point dragStart;
+        private double dragTop, dragLeft;
 
         /**
          * Create a new FieldView component.
          */
-        public FieldView(int height, int width)
+        public FieldView(int height, int width, Dimension screen)
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            this.screen = screen;
+            fitted = true;
+            setBackground(OUTSIDE_COLOR);
+
+            MouseAdapter mouse = new MouseAdapter() {
+                public void mousePressed(MouseEvent e)
+                {
+                    dragStart = e.getPoint();
+                    dragTop = top;
+                    dragLeft = left;
+                }
+
+                public void mouseDragged(MouseEvent e)
+                {
+                    fitted = false;
+                    top = dragTop - (e.getY() - dragStart.y) / scale;
+                    left = dragLeft - (e.getX() - dragStart.x) / scale;
+                    repaint();
+                }
+
+                public void mouseClicked(MouseEvent e)
+                {
+                    if(e.getClickCount() == 2) {
+                        fitted = true;
+                        repaint();
+                    }
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e)
+                {
+                    zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
         }
 
         /**
-         * Tell the GUI manager how big we would like to be.
+         * Tell the GUI manager how big we would like to be. A field
+         * too large for the screen asks for most of the screen, in
+         * the proportions of the field.
          */
         public Dimension getPreferredSize()
         {
+            if(densityRenderer != null) {
+                double fit = Math.min(0.75 * screen.width / gridWidth,
+                                      0.75 * screen.height / gridHeight);
+                return new Dimension(Math.max(1, (int) (gridWidth * fit)),
+                                     Math.max(1, (int) (gridHeight * fit)));
+            }
             return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
                                  gridHeight * GRID_VIEW_SCALING_FACTOR);
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * Zoom the view, keeping the cell under a point where it is.
+         * It is not zoomed out further than the whole field.
+         * @param factor How many times larger cells are to be drawn.
+         * @param x The column of the point, in pixels.
+         * @param y The row of the point, in pixels.
+         */
+        private void zoom(double factor, int x, int y)
+        {
+            double newScale = Math.max(getFitScale(), Math.min(MAX_SCALE, scale * factor));
+            top += y / scale - y / newScale;
+            left += x / scale - x / newScale;
+            scale = newScale;
+            fitted = false;
+            repaint();
+        }
+
+        /**
+         * Repaint the part of the view holding the cells a frame
+         * changed: the smallest rectangle holding them, clipped to
+         * the view, with a pixel to spare on each side for rounding
+         * and for pixels coloured from blocks of cells.
+         * @param frame The frame.
          */
-        public void preparePaint()
+        private void repaintChanged(FieldFrame frame)
         {
-            if(! size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
+            int count = frame.getChunkCount();
+            if(count == 0) {
+                return;
+            }
+            if(scale == 0) {
+                // Not painted yet, so the viewport is not known.
+                repaint();
+                return;
+            }
+            int cells = gridHeight * gridWidth;
+            int firstRow = gridHeight;
+            int lastRow = -1;
+            int firstCol = gridWidth;
+            int lastCol = -1;
+            for(int i = 0; i < count; i++) {
+                int first = frame.getChunk(i) * Field.CHUNK_SIZE;
+                int last = Math.min(first + Field.CHUNK_SIZE, cells) - 1;
+                int row = first / gridWidth;
+                int endRow = last / gridWidth;
+                firstRow = Math.min(firstRow, row);
+                lastRow = Math.max(lastRow, endRow);
+                if(row == endRow) {
+                    firstCol = Math.min(firstCol, first % gridWidth);
+                    lastCol = Math.max(lastCol, last % gridWidth);
                 }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
+                else {
+                    // The chunk runs from the end of one row into the next.
+                    firstCol = 0;
+                    lastCol = gridWidth - 1;
                 }
             }
+            int x0 = Math.max(0, (int) Math.floor((firstCol - left) * scale) - 1);
+            int y0 = Math.max(0, (int) Math.floor((firstRow - top) * scale) - 1);
+            int x1 = Math.min(getWidth(), (int) Math.ceil((lastCol + 1 - left) * scale) + 1);
+            int y1 = Math.min(getHeight(), (int) Math.ceil((lastRow + 1 - top) * scale) + 1);
+            if(x0 < x1 && y0 < y1) {
+                repaint(x0, y0, x1 - x0, y1 - y0);
+            }
         }
-        
+
         /**
-         * Paint on grid location on this field in a given color.
+         * @return The number of pixels across a cell at which the
+         *         whole field fits the component: a whole number if
+         *         one or more, so that every cell is the same size.
          */
-        public void drawMark(int x, int y, Color color)
+        private double getFitScale()
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            double fit = Math.min((double) Math.max(getWidth(), 1) / gridWidth,
+                                  (double) Math.max(getHeight(), 1) / gridHeight);
+            return fit < 1 ? fit : Math.floor(fit);
         }
 
         /**
-         * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * The field view component needs to be redisplayed. Only the
+         * cells in view are drawn, from tiles if a cell takes a pixel
+         * or more, or else from the counts of the cells each pixel
+         * covers, if the field is too large for the screen.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                }
-                else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
-                }
+            super.paintComponent(g);
+            if(fitted) {
+                scale = getFitScale();
+                top = 0;
+                left = 0;
+            }
+            if(shownFrame == null) {
+                return;
+            }
+            if(densityRenderer != null && scale < 1) {
+                densityRenderer.setSize(getWidth(), getHeight());
+                densityRenderer.setViewport(top, left, 1 / scale);
+                densityRenderer.refresh();
+                densityRenderer.draw(g);
+            }
+            else {
+                tiles.draw(g, shownFrame, top, left, scale, getWidth(), getHeight());
             }
         }
     }
@@ -0,0 +1,119 @@
+/**
+ * Small integer codes for every kind of participant that can
+ * occupy a cell of the field. The codes allow the field to keep a
+ * compact record of what is stored in each cell, so hot paths can
+ * inspect a neighbourhood without loading the objects themselves.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Species
+{
+    // Code of an empty cell.
+    public static final byte EMPTY = 0;
+    public static final byte PLANT = 1;
+    public static final byte RABBIT = 2;
+    public static final byte FOX = 3;
+    public static final byte WOLF = 4;
+    public static final byte DEER = 5;
+    public static final byte MOUSE = 6;
+    // Code used for any object the simulation does not know about.
+    public static final byte OTHER = 7;
+    // The number of distinct codes.
+    public static final int COUNT = 8;
+
+    // Printable names, indexed by code.
+    private static final String[] NAMES = {
+        "Empty", "Plant", "Rabbit", "Fox", "Wolf", "Deer", "Mouse", "Other"
+    };
+
+    /**
+     * Return the code of the given occupant.
+     * @param occupant The object stored in a cell, may be null.
+     * @return The species code of the occupant.
+     */
+    public static byte of(Object occupant)
+    {
+        if(occupant == null) {
+            return EMPTY;
+        }
+        return of(occupant.getClass());
+    }
+
+    /**
+     * Return the code used for the given class of occupant.
+     * @param occupantClass The class of a simulation participant.
+     * @return The species code of that class.
+     */
+    public static byte of(Class<?> occupantClass)
+    {
+        if(occupantClass == Plant.class) {
+            return PLANT;
+        }
+        else if(occupantClass == Rabbit.class) {
+            return RABBIT;
+        }
+        else if(occupantClass == Fox.class) {
+            return FOX;
+        }
+        else if(occupantClass == Wolf.class) {
+            return WOLF;
+        }
+        else if(occupantClass == Deer.class) {
+            return DEER;
+        }
+        else if(occupantClass == Mouse.class) {
+            return MOUSE;
+        }
+        else {
+            return OTHER;
+        }
+    }
+
+    /**
+     * Return a printable name for a species code.
+     * @param species The species code.
+     * @return The name of the species.
+     */
+    public static String getName(int species)
+    {
+        return NAMES[species];
+    }
+
+    /**
+     * Check whether a species code denotes an animal.
+     * @param species The species code.
+     * @return true if the code is one of the animal species.
+     */
+    public static boolean isAnimal(int species)
+    {
+        return species >= RABBIT && species <= MOUSE;
+    }
+
+    /**
+     * Check whether the members of a species act at the given time
+     * and weather. Outside those conditions their act does nothing.
+     * @param species The species code.
+     * @param time The time of the day.
+     * @param weather The current weather.
+     * @return true if the species acts.
+     */
+    public static boolean canAct(int species, Time time, Weather weather)
+    {
+        switch(species) {
+            case PLANT:
+                return Plant.canAct(time);
+            case RABBIT:
+                return Rabbit.canAct(time, weather);
+            case FOX:
+                return Fox.canAct(time, weather);
+            case WOLF:
+                return Wolf.canAct(time, weather);
+            case DEER:
+                return Deer.canAct(time, weather);
+            case MOUSE:
+                return Mouse.canAct(time, weather);
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * A 64-bit hash of the contents of a field: the species of the
+ * occupant of each cell, and whether it is male and infected. It is
+ * a Zobrist hash, the sum of a random key for each such fact, so a
+ * field can keep it up to date as occupants are placed, cleared,
+ * infected and moved, by adding and taking away the keys concerned,
+ * without ever looking at the whole field. Sums are used rather than
+ * exclusive ors so that threads can add their changes independently.
+ *
+ * The keys are not kept in a table, which would be larger than the
+ * field, but worked out from the cell and the fact by a mixing
+ * function. A hash can also be worked out from scratch by writing
+ * the state of a simulation to a StateHash, as to a checkpoint.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class StateHash implements Checkpoint.Sink
+{
+    // The state bits of an occupant, beside its species.
+    public static final int MALE = 1;
+    public static final int INFECTED = 2;
+    // The facts keyed beside the species codes.
+    private static final int MALE_KEY = Species.COUNT;
+    private static final int INFECTED_KEY = Species.COUNT + 1;
+    // The number of facts keyed for each cell.
+    private static final int KEYS_PER_CELL = Species.COUNT + 2;
+
+    // The hash of the participants written so far.
+    private long hash;
+
+    /**
+     * Return the key of a cell being occupied by a given species.
+     * @param index The cell index, as given by Field.getIndex.
+     * @param species The species code, not Species.EMPTY.
+     * @return The key.
+     */
+    public static long key(int index, byte species)
+    {
+        return mix((long) index * KEYS_PER_CELL + species);
+    }
+
+    /**
+     * Return the sum of the keys of the occupant of a cell having
+     * the given state.
+     * @param index The cell index, as given by Field.getIndex.
+     * @param state The state bits: MALE and INFECTED.
+     * @return The sum of the keys, 0 if no bit is set.
+     */
+    public static long stateKey(int index, int state)
+    {
+        long sum = 0;
+        if((state & MALE) != 0) {
+            sum += mix((long) index * KEYS_PER_CELL + MALE_KEY);
+        }
+        if((state & INFECTED) != 0) {
+            sum += mix((long) index * KEYS_PER_CELL + INFECTED_KEY);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the state bits of an occupant.
+     * @param male Whether it is male.
+     * @param infected Whether it is infected.
+     * @return The state bits.
+     */
+    public static int state(boolean male, boolean infected)
+    {
+        return (male ? MALE : 0) | (infected ? INFECTED : 0);
+    }
+
+    /**
+     * Start a hash from scratch.
+     */
+    public void writeHeader(Simulator.Engine engine, int depth, int width, int step, Weather weather,
+                            long randomState, long engineSeed, int count)
+    {
+        hash = 0;
+    }
+
+    /**
+     * Add the keys of a participant to the hash.
+     */
+    public void writeParticipant(byte species, int cell, int age, int foodLevel,
+                                 boolean male, boolean infected)
+    {
+        hash += key(cell, species) + stateKey(cell, state(male, infected));
+    }
+
+    /**
+     * @return The hash of the participants written.
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Scramble a number, so that numbers differing by one bit give
+     * unrelated results. This is the finaliser of SplitMix64.
+     * @param value The number.
+     * @return The scrambled number.
+     */
+    private static long mix(long value)
+    {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * A snapshot of the cells adjacent to a location, taken once at the
+ * start of an act. Each neighbour is recorded in a random order with
+ * the species code of its occupant, so the behaviour steps of an
+ * act (infecting, giving birth, finding food or a partner, moving)
+ * can all be answered from the snapshot instead of scanning the
+ * field again. Changes the acting participant makes to its
+ * neighbourhood are recorded back into the snapshot.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class Surroundings
+{
+    // The most neighbours a location can have.
+    private static final int SIZE = 8;
+
+    // The field the snapshot was taken from.
+    private Field field;
+    // The neighbours, packed as by Location.pack, in a random order.
+    private int[] cells;
+    // The species code of each neighbour's occupant.
+    private byte[] species;
+    // The number of neighbours recorded.
+    private int count;
+
+    /**
+     * Create an empty snapshot.
+     */
+    public Surroundings()
+    {
+        cells = new int[SIZE];
+        species = new byte[SIZE];
+        count = 0;
+    }
+
+    /**
+     * Record the neighbours of a location, reading each cell once.
+     * @param field The field the location lies in.
+     * @param neighbourhood A cursor over the field.
+     * @param location The location whose neighbours are recorded.
+     */
+    public void scan(Field field, Neighbourhood neighbourhood, Location location)
+    {
+        scan(field, neighbourhood, location.getRow(), location.getCol());
+    }
+
+    /**
+     * Record the neighbours of a cell, reading each cell once.
+     * @param field The field the cell lies in.
+     * @param neighbourhood A cursor over the field.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void scan(Field field, Neighbourhood neighbourhood, int row, int col)
+    {
+        neighbourhood.reset(row, col);
+        record(field, neighbourhood);
+    }
+
+    /**
+     * Record the neighbours of a cell in the given order.
+     * @param field The field the cell lies in.
+     * @param neighbourhood A cursor over the field.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param permutation Which ordering of the neighbours to use.
+     */
+    public void scan(Field field, Neighbourhood neighbourhood, int row, int col, int permutation)
+    {
+        neighbourhood.reset(row, col, permutation);
+        record(field, neighbourhood);
+    }
+
+    /**
+     * Record the neighbours a freshly reset cursor produces.
+     */
+    private void record(Field field, Neighbourhood neighbourhood)
+    {
+        this.field = field;
+        count = 0;
+        while(neighbourhood.hasNext()) {
+            int where = neighbourhood.next();
+            cells[count] = where;
+            species[count] = field.getSpeciesAt(Location.unpackRow(where), Location.unpackCol(where));
+            count++;
+        }
+    }
+
+    /**
+     * @return The number of neighbours in the snapshot.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Return the species code of a neighbour's occupant.
+     * @param index The neighbour, between 0 and size() - 1.
+     * @return Its species code, Species.EMPTY if it is free.
+     */
+    public byte getSpecies(int index)
+    {
+        return species[index];
+    }
+
+    /**
+     * Return the occupant of a neighbour.
+     * @param index The neighbour, between 0 and size() - 1.
+     * @return The object in that cell, or null if it is free.
+     */
+    public Object getOccupant(int index)
+    {
+        int where = cells[index];
+        return field.getObjectAt(Location.unpackRow(where), Location.unpackCol(where));
+    }
+
+    /**
+     * Return the position of a neighbour.
+     * @param index The neighbour, between 0 and size() - 1.
+     * @return The position, packed as by Location.pack.
+     */
+    public int getPosition(int index)
+    {
+        return cells[index];
+    }
+
+    /**
+     * Return the location of a neighbour.
+     * @param index The neighbour, between 0 and size() - 1.
+     * @return A new Location for that cell.
+     */
+    public Location getLocation(int index)
+    {
+        int where = cells[index];
+        return new Location(Location.unpackRow(where), Location.unpackCol(where));
+    }
+
+    /**
+     * Record that the occupant of a neighbour has changed.
+     * @param index The neighbour, between 0 and size() - 1.
+     * @param occupant The species code of the new occupant.
+     */
+    public void setSpecies(int index, byte occupant)
+    {
+        species[index] = occupant;
+    }
+
+    /**
+     * Find the first free neighbour and record that it is about to
+     * be taken by the given species.
+     * @param occupant The species code of the new occupant.
+     * @return The neighbour, or -1 if none is free.
+     */
+    public int takeFree(byte occupant)
+    {
+        for(int i = 0; i < count; i++) {
+            if(species[i] == Species.EMPTY) {
+                species[i] = occupant;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first free neighbour and record that it is about to
+     * be taken by the given species.
+     * @param occupant The species code of the new occupant.
+     * @return The location of the neighbour, or null if none is free.
+     */
+    public Location takeFreeLocation(byte occupant)
+    {
+        int index = takeFree(occupant);
+        if(index >= 0) {
+            return getLocation(index);
+        }
+        else {
+            return null;
+        }
+    }
+}
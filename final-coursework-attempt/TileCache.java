@@ -0,0 +1,228 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws the part of a field inside a viewport, from square tiles of
+ * TILE_SIZE by TILE_SIZE cells, each an image with one pixel per
+ * cell scaled to the viewport when drawn. Only the tiles the viewport
+ * overlaps are drawn, so a frame costs time in proportion to the
+ * cells shown, however large the field. Only the tiles within the
+ * clip of the graphics context are drawn, so repainting a small part
+ * of the view costs little.
+ *
+ * Drawn tiles are kept in a small cache, the least recently used
+ * making way for new ones, so that panning draws only the tiles that
+ * come into view. A cached tile is drawn again from a frame only if
+ * a chunk of its cells has changed since it was last drawn; the
+ * images of tiles put out of the cache are reused for new ones.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class TileCache
+{
+    // The width and depth of a tile, in cells.
+    public static final int TILE_SIZE = 128;
+    // The fewest tiles the cache holds.
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The image of a tile.
+     */
+    private static class Tile
+    {
+        // The image, and the pixels behind it, in rows of TILE_SIZE.
+        BufferedImage image;
+        int[] pixels;
+        // The number of frames noted when it was last drawn.
+        int drawnAt;
+
+        /**
+         * Create a tile with a blank image.
+         */
+        Tile()
+        {
+            image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    // The depth and width of the field.
+    private int depth, width;
+    // The number of rows and columns of tiles.
+    private int tileRows, tileCols;
+    // The colour of each species, indexed by species code, as RGB.
+    private int[] palette;
+    // The tiles drawn, by tile index, the least recently used first.
+    private LinkedHashMap<Integer, Tile> tiles;
+    // The most tiles the cache holds at present.
+    private int capacity;
+    // A tile put out of the cache, to be reused, or null.
+    private Tile spare;
+    // The number of frames noted, and the number noted when each tile
+    // last changed, by tile index.
+    private int frames;
+    private int[] changedAt;
+
+    /**
+     * Create a cache for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param unknown The colour of species given no colour.
+     */
+    public TileCache(int depth, int width, Color unknown)
+    {
+        this.depth = depth;
+        this.width = width;
+        tileRows = (depth + TILE_SIZE - 1) / TILE_SIZE;
+        tileCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        palette = new int[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            palette[code] = unknown.getRGB();
+        }
+        capacity = MIN_CAPACITY;
+        tiles = new LinkedHashMap<Integer, Tile>(MIN_CAPACITY, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest)
+            {
+                if(size() > capacity) {
+                    spare = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+        changedAt = new int[tileRows * tileCols];
+    }
+
+    /**
+     * Define the colour of a species. Every tile will be drawn again.
+     * @param species The species code, Species.EMPTY for free cells.
+     * @param color The colour.
+     */
+    public void setColor(byte species, Color color)
+    {
+        palette[species] = color.getRGB();
+        tiles.clear();
+    }
+
+    /**
+     * Note the chunks of cells a frame has changed, so that the
+     * tiles holding them are drawn again before they are next shown.
+     * @param frame The frame, of a field of the size given to the cache.
+     */
+    public void changed(FieldFrame frame)
+    {
+        frames++;
+        for(int i = 0; i < frame.getChunkCount(); i++) {
+            int index = frame.getChunk(i) * Field.CHUNK_SIZE;
+            int end = Math.min(index + Field.CHUNK_SIZE, depth * width);
+            // A chunk may run from the end of one row into the next.
+            while(index < end) {
+                int row = index / width;
+                int col = index % width;
+                int rowEnd = Math.min(end, (row + 1) * width);
+                int lastCol = col + rowEnd - index - 1;
+                int tileRow = row / TILE_SIZE;
+                for(int tileCol = col / TILE_SIZE; tileCol <= lastCol / TILE_SIZE; tileCol++) {
+                    changedAt[tileRow * tileCols + tileCol] = frames;
+                }
+                index = rowEnd;
+            }
+        }
+    }
+
+    /**
+     * Draw the part of a field inside a viewport, within the clip of
+     * the graphics context.
+     * @param g The graphics context.
+     * @param frame The frame to draw changed and new tiles from.
+     * @param top The row at the top edge of the viewport; need not be whole.
+     * @param left The column at the left edge of the viewport; need not be whole.
+     * @param scale The number of pixels across a cell.
+     * @param pixelWidth The width of the viewport, in pixels.
+     * @param pixelHeight The height of the viewport, in pixels.
+     */
+    public void draw(Graphics g, FieldFrame frame, double top, double left, double scale,
+                     int pixelWidth, int pixelHeight)
+    {
+        int firstRow = Math.max(0, (int) Math.floor(top) / TILE_SIZE);
+        int firstCol = Math.max(0, (int) Math.floor(left) / TILE_SIZE);
+        int lastRow = Math.min(tileRows - 1, (int) Math.floor(top + pixelHeight / scale) / TILE_SIZE);
+        int lastCol = Math.min(tileCols - 1, (int) Math.floor(left + pixelWidth / scale) / TILE_SIZE);
+        if(firstRow > lastRow || firstCol > lastCol) {
+            return;
+        }
+        // Room for the tiles in view, and as many again to pan back to.
+        capacity = Math.max(MIN_CAPACITY, 2 * (lastRow - firstRow + 1) * (lastCol - firstCol + 1));
+        Rectangle clip = g.getClipBounds();
+        if(clip != null) {
+            firstRow = Math.max(firstRow, (int) Math.floor(top + clip.y / scale) / TILE_SIZE);
+            firstCol = Math.max(firstCol, (int) Math.floor(left + clip.x / scale) / TILE_SIZE);
+            lastRow = Math.min(lastRow, (int) Math.floor(top + (clip.y + clip.height) / scale) / TILE_SIZE);
+            lastCol = Math.min(lastCol, (int) Math.floor(left + (clip.x + clip.width) / scale) / TILE_SIZE);
+        }
+        for(int tileRow = firstRow; tileRow <= lastRow; tileRow++) {
+            int row = tileRow * TILE_SIZE;
+            int rows = Math.min(TILE_SIZE, depth - row);
+            int y0 = (int) Math.floor((row - top) * scale);
+            int y1 = (int) Math.floor((row + rows - top) * scale);
+            for(int tileCol = firstCol; tileCol <= lastCol; tileCol++) {
+                int col = tileCol * TILE_SIZE;
+                int cols = Math.min(TILE_SIZE, width - col);
+                Tile tile = getTile(tileRow * tileCols + tileCol, frame, row, col, rows, cols);
+                int x0 = (int) Math.floor((col - left) * scale);
+                int x1 = (int) Math.floor((col + cols - left) * scale);
+                g.drawImage(tile.image, x0, y0, x1, y1, 0, 0, cols, rows, null);
+            }
+        }
+    }
+
+    /**
+     * @return The number of tiles in the cache.
+     */
+    public int getSize()
+    {
+        return tiles.size();
+    }
+
+    /**
+     * Return a tile, drawn up to date, from the cache if it is there.
+     * @param index The tile index.
+     * @param frame The frame to draw it from if need be.
+     * @param row The first row of the tile.
+     * @param col The first column of the tile.
+     * @param rows The number of rows of the tile within the field.
+     * @param cols The number of columns of the tile within the field.
+     * @return The tile.
+     */
+    private Tile getTile(int index, FieldFrame frame, int row, int col, int rows, int cols)
+    {
+        Tile tile = tiles.get(index);
+        if(tile != null && tile.drawnAt >= changedAt[index]) {
+            return tile;
+        }
+        if(tile == null) {
+            if(spare != null) {
+                tile = spare;
+                spare = null;
+            }
+            else {
+                tile = new Tile();
+            }
+            tiles.put(index, tile);
+        }
+        for(int r = 0; r < rows; r++) {
+            int from = (row + r) * width + col;
+            int to = r * TILE_SIZE;
+            for(int c = 0; c < cols; c++) {
+                tile.pixels[to + c] = palette[frame.getSpeciesAt(from + c)];
+            }
+        }
+        tile.drawnAt = frames;
+        return tile;
+    }
+}
@@ -0,0 +1,262 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Steps the plants and animals of an ActivityScheduler in parallel.
+ * The field is cut into square tiles, coloured like a checkerboard
+ * with four colours by the parity of their row and column of tiles.
+ * A participant only looks at, moves into, eats from or gives birth
+ * into the cells adjacent to it, so as long as tiles are at least
+ * MIN_TILE_SIZE cells wide, two tiles of the same colour never touch
+ * the same cell. The tiles of one colour therefore act at the same
+ * time on a fork-join pool, one colour after the other.
+ *
+ * Every participant acts once per step, in the tile it starts the step
+ * in, following the usual act of its class. Within a tile participants
+ * act oldest first. With a parallelism of one every tile runs on the
+ * calling thread, in a fixed order.
+ *
+ * While a tile runs, its participants draw their random numbers from a
+ * stream of its own, worked out by a CounterRandom from the step and
+ * the tile. No two threads share a generator, and a step comes out
+ * the same whatever the parallelism.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class TileEngine
+{
+    // The smallest tile size for which tiles of one colour never
+    // reach the same cell: each reaches one cell past its edges.
+    public static final int MIN_TILE_SIZE = 2;
+    // The number of colours of the checkerboard.
+    private static final int COLOURS = 4;
+
+    // The field being stepped.
+    private Field field;
+    // The participants.
+    private ActivityScheduler scheduler;
+    // The width and depth of a tile, in cells.
+    private int tileSize;
+    // The number of tiles down and across the field.
+    private int tilesDown, tilesAcross;
+    // The random numbers of the tiles.
+    private CounterRandom random;
+    // The stream each thread draws the numbers of its tile from.
+    private ThreadLocal<CounterRandom.Stream> draws;
+    // The pool running the tiles of one colour.
+    private ForkJoinPool pool;
+    // The participants acting in each tile in the current step.
+    private List<List<Plant>> tilePlants;
+    private List<List<Animal>> tileAnimals;
+    // The participants born in each tile in the current step.
+    private List<List<Plant>> newPlants;
+    private List<List<Animal>> newAnimals;
+
+    /**
+     * Create an engine.
+     * @param field The field being stepped.
+     * @param scheduler The participants.
+     * @param tileSize The width and depth of a tile, at least MIN_TILE_SIZE.
+     * @param seed The seed of the random numbers of the tiles.
+     * @param parallelism The number of tiles run at the same time.
+     */
+    public TileEngine(Field field, ActivityScheduler scheduler, int tileSize, long seed, int parallelism)
+    {
+        if(tileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + MIN_TILE_SIZE + " cells wide");
+        }
+        this.field = field;
+        this.scheduler = scheduler;
+        this.tileSize = tileSize;
+        tilesDown = (field.getDepth() + tileSize - 1) / tileSize;
+        tilesAcross = (field.getWidth() + tileSize - 1) / tileSize;
+        random = new CounterRandom(seed);
+        draws = ThreadLocal.withInitial(random::stream);
+        pool = new ForkJoinPool(Math.max(parallelism, 1));
+        tilePlants = new ArrayList<>();
+        tileAnimals = new ArrayList<>();
+        newPlants = new ArrayList<>();
+        newAnimals = new ArrayList<>();
+        for(int tile = 0; tile < tilesDown * tilesAcross; tile++) {
+            tilePlants.add(new ArrayList<>());
+            tileAnimals.add(new ArrayList<>());
+            newPlants.add(new ArrayList<>());
+            newAnimals.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * @return The width and depth of a tile, in cells.
+     */
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+
+    /**
+     * @return The seed of the random numbers of the tiles.
+     */
+    public long getSeed()
+    {
+        return random.getSeed();
+    }
+
+    /**
+     * @return The number of tiles run at the same time.
+     */
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the threads of the engine.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Run one step: the plants act if plants can act, tile by tile,
+     * then the animals of every species that can act. The dead are
+     * removed, and the newborns are added tile by tile.
+     * @param time The time of the day of the step.
+     * @param weather The weather of the step.
+     * @param step The number of the step, which the random numbers
+     *             of the tiles depend on.
+     */
+    public void step(Time time, Weather weather, int step)
+    {
+        for(int tile = 0; tile < tilePlants.size(); tile++) {
+            tilePlants.get(tile).clear();
+            tileAnimals.get(tile).clear();
+            newPlants.get(tile).clear();
+            newAnimals.get(tile).clear();
+        }
+
+        if(Plant.canAct(time)) {
+            for(Plant plant : scheduler.getPlants()) {
+                if(plant.isAlive()) {
+                    tilePlants.get(tileOf(plant.getLocation())).add(plant);
+                }
+            }
+            runColours(2 * step, tile -> {
+                for(Plant plant : tilePlants.get(tile)) {
+                    plant.act(newPlants.get(tile), time);
+                }
+            });
+        }
+
+        scheduler.forEachActiveAnimal(time, weather, animal -> {
+            if(animal.isAlive()) {
+                tileAnimals.get(tileOf(animal.getLocation())).add(animal);
+            }
+        });
+        runColours(2 * step + 1, tile -> {
+            for(Animal animal : tileAnimals.get(tile)) {
+                animal.act(newAnimals.get(tile), time, weather);
+            }
+        });
+
+        scheduler.removeDead();
+        for(List<Animal> born : newAnimals) {
+            for(Animal animal : born) {
+                scheduler.add(animal);
+            }
+        }
+        for(List<Plant> born : newPlants) {
+            for(Plant plant : born) {
+                scheduler.add(plant);
+            }
+        }
+    }
+
+    /**
+     * Run a piece of work for every tile, one colour at a time,
+     * the tiles of a colour in parallel, each drawing from its own
+     * random numbers.
+     * @param round A number unique to the round of work.
+     * @param work The work for one tile, given the tile's number.
+     */
+    private void runColours(int round, TileWork work)
+    {
+        for(int colour = 0; colour < COLOURS; colour++) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(int row = colour / 2; row < tilesDown; row += 2) {
+                for(int col = colour % 2; col < tilesAcross; col += 2) {
+                    int tile = row * tilesAcross + col;
+                    if(!tilePlants.get(tile).isEmpty() || !tileAnimals.get(tile).isEmpty()) {
+                        tasks.add(() -> {
+                            CounterRandom.Stream stream = draws.get();
+                            stream.reset(round, tile, CounterRandom.TILE);
+                            field.setLocalRandom(stream);
+                            try {
+                                work.run(tile);
+                            }
+                            finally {
+                                field.setLocalRandom(null);
+                            }
+                            return null;
+                        });
+                    }
+                }
+            }
+            runAll(tasks);
+        }
+    }
+
+    /**
+     * Run tasks that touch disjoint cells, waiting for all of them.
+     * @param tasks The tasks.
+     */
+    private void runAll(List<Callable<Void>> tasks)
+    {
+        try {
+            if(pool.getParallelism() == 1) {
+                for(Callable<Void> task : tasks) {
+                    task.call();
+                }
+            }
+            else {
+                for(Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tile step interrupted", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Tile step failed", e.getCause());
+        }
+        catch(Exception e) {
+            throw new IllegalStateException("Tile step failed", e);
+        }
+    }
+
+    /**
+     * @return The number of the tile holding a location.
+     */
+    private int tileOf(Location location)
+    {
+        return (location.getRow() / tileSize) * tilesAcross + location.getCol() / tileSize;
+    }
+
+    /**
+     * The work done for one tile.
+     */
+    private interface TileWork
+    {
+        /**
+         * Do the work for a tile.
+         * @param tile The tile's number.
+         */
+        void run(int tile);
+    }
+}
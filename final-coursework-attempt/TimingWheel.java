@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel holding events for integer ids, each
+ * due at a given tick and carrying a tag. The lowest level has one slot per tick for the
+ * next SLOTS ticks; each higher level has one slot per SLOTS ticks of
+ * the level below, and its events are moved down a level as their
+ * slot comes round. Scheduling an event and firing it both take
+ * constant time, however far ahead it is due, so a tick only costs
+ * as much as the events that fall due in it.
+ *
+ * The wheel does not cancel events: an event that has become stale
+ * still fires, and it is up to the caller to ignore it. The tag lets
+ * the caller tell an event from one for an earlier holder of its id.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class TimingWheel
+{
+    // The number of bits of a tick that select a slot within a level.
+    private static final int BITS = 6;
+    // The number of slots in each level.
+    private static final int SLOTS = 1 << BITS;
+    // The number of levels, enough for events up to 2^24 ticks ahead.
+    private static final int LEVELS = 4;
+
+    // The ids of the events in each slot, level by level.
+    private int[][][] ids;
+    // The tag and the tick at which each of those events is due.
+    private int[][][] tags;
+    private int[][][] due;
+    // The number of events in each slot.
+    private int[][] sizes;
+    // The current tick.
+    private int now;
+    // The ids and tags of the events that fell due in the last tick.
+    private int[] fired;
+    private int[] firedTags;
+    private int firedCount;
+
+    /**
+     * Create an empty wheel.
+     * @param now The current tick.
+     */
+    public TimingWheel(int now)
+    {
+        ids = new int[LEVELS][SLOTS][];
+        tags = new int[LEVELS][SLOTS][];
+        due = new int[LEVELS][SLOTS][];
+        sizes = new int[LEVELS][SLOTS];
+        for(int level = 0; level < LEVELS; level++) {
+            for(int slot = 0; slot < SLOTS; slot++) {
+                ids[level][slot] = new int[4];
+                tags[level][slot] = new int[4];
+                due[level][slot] = new int[4];
+            }
+        }
+        fired = new int[16];
+        firedTags = new int[16];
+        this.now = now;
+    }
+
+    /**
+     * Remove every event and set the current tick.
+     * @param now The current tick.
+     */
+    public void clear(int now)
+    {
+        for(int[] levelSizes : sizes) {
+            Arrays.fill(levelSizes, 0);
+        }
+        firedCount = 0;
+        this.now = now;
+    }
+
+    /**
+     * @return The current tick.
+     */
+    public int getNow()
+    {
+        return now;
+    }
+
+    /**
+     * Schedule an event.
+     * @param id The id the event is for.
+     * @param tag The tag of the event.
+     * @param tick The tick at which it falls due, after the current one.
+     */
+    public void schedule(int id, int tag, int tick)
+    {
+        assert tick > now : "Events must fall due after the current tick";
+        long delta = (long) tick - now;
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        insert(level, (tick >>> (BITS * level)) & (SLOTS - 1), id, tag, tick);
+    }
+
+    /**
+     * Move on to the next tick, collecting the events falling due.
+     * @return The number of events that fell due.
+     */
+    public int advance()
+    {
+        now++;
+        firedCount = 0;
+        // Bring down the events of higher levels whose slot has come
+        // round, the highest level first.
+        int top = 0;
+        while(top < LEVELS - 1 && (now & ((1 << (BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for(int level = top; level > 0; level--) {
+            int slot = (now >>> (BITS * level)) & (SLOTS - 1);
+            int count = sizes[level][slot];
+            sizes[level][slot] = 0;
+            for(int i = 0; i < count; i++) {
+                int tick = due[level][slot][i];
+                if(tick == now) {
+                    addFired(ids[level][slot][i], tags[level][slot][i]);
+                }
+                else {
+                    schedule(ids[level][slot][i], tags[level][slot][i], tick);
+                }
+            }
+        }
+        int slot = now & (SLOTS - 1);
+        int count = sizes[0][slot];
+        sizes[0][slot] = 0;
+        for(int i = 0; i < count; i++) {
+            addFired(ids[0][slot][i], tags[0][slot][i]);
+        }
+        return firedCount;
+    }
+
+    /**
+     * Return one of the ids whose event fell due in the last tick.
+     * @param index Which one, below the count returned by advance.
+     * @return The id.
+     */
+    public int getFired(int index)
+    {
+        return fired[index];
+    }
+
+    /**
+     * Return the tag of one of the events that fell due in the last tick.
+     * @param index Which one, as for getFired.
+     * @return The tag.
+     */
+    public int getFiredTag(int index)
+    {
+        return firedTags[index];
+    }
+
+    /**
+     * Add an event to a slot.
+     */
+    private void insert(int level, int slot, int id, int tag, int tick)
+    {
+        int size = sizes[level][slot];
+        if(size == ids[level][slot].length) {
+            ids[level][slot] = Arrays.copyOf(ids[level][slot], size * 2);
+            tags[level][slot] = Arrays.copyOf(tags[level][slot], size * 2);
+            due[level][slot] = Arrays.copyOf(due[level][slot], size * 2);
+        }
+        ids[level][slot][size] = id;
+        tags[level][slot][size] = tag;
+        due[level][slot][size] = tick;
+        sizes[level][slot] = size + 1;
+    }
+
+    /**
+     * Add an event to those that fell due.
+     */
+    private void addFired(int id, int tag)
+    {
+        if(firedCount == fired.length) {
+            fired = Arrays.copyOf(fired, firedCount * 2);
+            firedTags = Arrays.copyOf(firedTags, firedCount * 2);
+        }
+        firedTags[firedCount] = tag;
+        fired[firedCount++] = id;
+    }
+}
@@ -22,7 +22,25 @@ public class Weather
     // Used to convert the weather into string
     private String weatherString;
     
-    private static final Random rand = Randomizer.getRandom();
+    // The random number generator deciding the weather.
+    private Random rand;
+    
+    /**
+     * Create a weather drawing from the shared random numbers.
+     */
+    public Weather()
+    {
+        this(Randomizer.getRandom());
+    }
+    
+    /**
+     * Create a weather drawing from the given random numbers.
+     * @param rand The random number generator of the simulation.
+     */
+    public Weather(Random rand)
+    {
+        this.rand = rand;
+    }
     
     /**
      * Generates a random weather.
@@ -50,6 +68,20 @@ public class Weather
             }
     }
     
+    /**
+     * Set the weather directly rather than at random, as when a
+     * simulation is restored from a checkpoint.
+     * @param rainy Whether it is a rainy day.
+     * @param foggy Whether it is a foggy day, if it is not rainy.
+     */
+    public void setWeather(boolean rainy, boolean foggy)
+    {
+        rainyDay = rainy;
+        foggyDay = foggy && !rainy;
+        sunnyDay = !rainyDay && !foggyDay;
+        weatherString = rainyDay ? "Rainy" : foggyDay ? "Foggy" : "Sunny";
+    }
+    
     /**
      * Method used to get a srting determining the weather type.
      * 
@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The time of the day and the weather of every step of a simulation,
+ * drawn only when a step is first asked about. This lets an engine
+ * look ahead for the next step in which a species can act, without
+ * going through the steps in between.
+ *
+ * @author Alvaro Moreno and Emil Cechelt
+ */
+public class WeatherSchedule
+{
+    // The random number generator deciding the weather.
+    private Random rand;
+    // The weather of the steps from first onwards, drawn so far.
+    private List<Weather> weathers;
+    // The first step still kept.
+    private int first;
+    // The time of the day of a step, set when asked about.
+    private Time time;
+
+    /**
+     * Create a schedule starting at the given step.
+     * @param rand The random number generator deciding the weather.
+     * @param first The first step of the schedule.
+     */
+    public WeatherSchedule(Random rand, int first)
+    {
+        this.rand = rand;
+        this.first = first;
+        weathers = new ArrayList<>();
+        time = new Time();
+    }
+
+    /**
+     * Return the weather of a step, drawing it and the weather of
+     * any step before it if that has not been done yet.
+     * @param step The step, not before the first step kept.
+     * @return The weather of the step.
+     */
+    public Weather getWeather(int step)
+    {
+        while(first + weathers.size() <= step) {
+            Weather weather = new Weather(rand);
+            weather.setWeather();
+            weathers.add(weather);
+        }
+        return weathers.get(step - first);
+    }
+
+    /**
+     * Return the time of the day of a step. The same object is
+     * returned for every step, set to the last step asked about.
+     * @param step The step.
+     * @return The time of the day of the step.
+     */
+    public Time getTime(int step)
+    {
+        time.setTime(step);
+        return time;
+    }
+
+    /**
+     * Find the first step, after the given one, in which a species
+     * can act.
+     * @param species The species code.
+     * @param after The step after which to look.
+     * @return The next step in which the species can act.
+     */
+    public int nextActivation(int species, int after)
+    {
+        int step = after + 1;
+        while(!Species.canAct(species, getTime(step), getWeather(step))) {
+            step++;
+        }
+        return step;
+    }
+
+    /**
+     * Forget the weather of the steps before the given one.
+     * @param step The first step still needed.
+     */
+    public void discardBefore(int step)
+    {
+        if(step > first) {
+            int drop = Math.min(step - first, weathers.size());
+            weathers.subList(0, drop).clear();
+            first += drop;
+        }
+    }
+}